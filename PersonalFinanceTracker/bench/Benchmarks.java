@@ -0,0 +1,399 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Benchmarks for the DatabaseHandler, Account and export paths. Every run works
+// on fresh SQLite files in a temporary directory, filled with synthetic data from
+// a fixed seed, so results are comparable between runs and machines.
+//
+// Build and run from PersonalFinanceTracker/ with the SQLite JDBC driver in lib/:
+//   javac -cp "lib/*" -d out src/*.java bench/*.java
+//   java -cp "out:lib/*" Benchmarks              (10k, 100k and 1M rows)
+//   java -cp "out:lib/*" Benchmarks 10000 50000  (custom table sizes)
+public class Benchmarks {
+    private static final long SEED = 42;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final String[] CATEGORIES = {
+            "Housing", "Groceries", "Transportation", "Entertainment", "Phone/Internet", "Miscellaneous",
+            "Savings", "Emergency", "Dining", "Health", "Travel", "Utilities"
+    };
+
+    private static final PrintStream CONSOLE = System.out;
+    // DatabaseHandler logs every insert; keep that out of the timings and the report
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    // Results are stored here so the JIT cannot drop the benchmarked work
+    private static volatile Object sink;
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 100_000, 1_000_000};
+        Path dir = Files.createTempDirectory("finance-bench");
+        try {
+            benchmarkInserts(dir);
+            benchmarkJournal(dir);
+            for (int rows : sizes) {
+                benchmarkReads(dir, rows);
+            }
+            benchmarkAccount(1_000_000);
+            benchmarkLedgers(1_000_000);
+            benchmarkMoney(1_000_000);
+            benchmarkPortfolio(1_000_000);
+            benchmarkMetrics();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void benchmarkInserts(Path dir) throws Exception {
+        CONSOLE.println("== Inserts");
+        DatabaseHandler handler = openDatabase(dir, "inserts");
+        List<Transaction> singles = syntheticTransactions(1_000, SEED);
+        List<Transaction> batch = syntheticTransactions(10_000, SEED + 1);
+
+        bench("insertTransaction (single)", singles.size(), () -> {
+            for (Transaction t : singles) {
+                handler.insertTransaction(t.getAmount(), t.getDate(), t.getDescription(), t.getCategory());
+            }
+            return null;
+        });
+        bench("insertTransactions (batched)", batch.size(), () -> handler.insertTransactions(batch));
+        closeDatabase(handler);
+    }
+
+    // Acknowledged writes through the journal: one fsync per append (or per group
+    // of concurrent appends) instead of one SQLite commit per row
+    private static void benchmarkJournal(Path dir) throws Exception {
+        CONSOLE.println("== Journal");
+        DatabaseHandler handler = openDatabase(dir, "journal");
+        List<Transaction> singles = syntheticTransactions(1_000, SEED);
+        TransactionJournal journal = new TransactionJournal(dir.resolve("journal.journal"), handler);
+
+        bench("TransactionJournal.append", singles.size(), () -> {
+            for (Transaction t : singles) {
+                journal.append(t.getAmount(), t.getDate(), t.getDescription(), t.getCategory());
+            }
+            return null;
+        });
+        journal.close();
+        CONSOLE.println(journal);
+        closeDatabase(handler);
+    }
+
+    private static void benchmarkReads(Path dir, int rows) throws Exception {
+        CONSOLE.println("== " + rows + " rows");
+        DatabaseHandler handler = openDatabase(dir, "reads-" + rows);
+        System.setOut(QUIET);
+        try {
+            handler.setBatchCommitSize(10_000);
+            handler.insertTransactions(syntheticTransactions(rows, SEED));
+            for (String category : CATEGORIES) {
+                handler.insertBudget(category, 500);
+            }
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        Path csv = dir.resolve("export-" + rows + ".csv");
+
+        bench("getAllTransactions", rows, handler::getAllTransactions);
+        bench("getMonthlyExpenses", 1, handler::getMonthlyExpenses);
+        bench("getBudgetLimits", 1, handler::getBudgetLimits);
+        bench("searchTransactions (prefix)", 1, () -> handler.searchTransactions("gro", null, null, null, 50));
+        bench("countTransactions (search)", 1, () -> handler.countTransactions("gro"));
+        bench("CsvExporter.export", rows, () -> new CsvExporter(handler).export(csv, null));
+
+        // Three-year per-category report: one thread over getAllTransactions, the
+        // fork-join engine from scratch, and the engine with every month cached
+        YearMonth to = YearMonth.now();
+        YearMonth from = to.minusYears(3);
+        bench("report (single thread)", rows, () -> {
+            Map<String, CategoryStats> stats = new HashMap<>();
+            for (Transaction t : handler.getAllTransactions()) {
+                stats.computeIfAbsent(t.getCategory(), c -> new CategoryStats(c, ReportEngine.DEFAULT_TOP_SIZE)).add(t);
+            }
+            return stats;
+        });
+        ReportEngine engine = new ReportEngine(handler);
+        bench("ReportEngine.report (cold)", rows, () -> {
+            engine.invalidate();
+            return engine.report(from, to);
+        });
+        bench("ReportEngine.report (cached)", rows, () -> engine.report(from, to));
+        engine.shutdown();
+        closeDatabase(handler);
+    }
+
+    private static void benchmarkAccount(int rows) throws Exception {
+        CONSOLE.println("== Account, " + rows + " transactions");
+        List<Transaction> transactions = syntheticTransactions(rows, SEED);
+
+        bench("Account.addTransaction", rows, () -> {
+            Account account = newAccount();
+            for (Transaction t : transactions) {
+                account.addTransaction(t);
+            }
+            return account;
+        });
+
+        Account account = newAccount();
+        for (Transaction t : transactions) {
+            account.addTransaction(t);
+        }
+        int calls = 1_000;
+        bench("Account.getTotalBalanceCents", calls, () -> {
+            long total = 0;
+            for (int i = 0; i < calls; i++) {
+                total += account.getTotalBalanceCents();
+            }
+            return total;
+        });
+    }
+
+    // Same scans over the object model and the columnar model, plus their heap footprints
+    private static void benchmarkLedgers(int rows) throws Exception {
+        CONSOLE.println("== Ledgers, " + rows + " transactions");
+        List<Transaction> transactions = syntheticTransactions(rows, SEED);
+        long today = LocalDate.now().toEpochDay();
+        Ledger[] ledgers = {new ObjectLedger(), new ColumnarLedger()};
+        for (Ledger ledger : ledgers) {
+            String name = ledger.getClass().getSimpleName();
+            ledger.addAll(transactions);
+            CONSOLE.println(String.format("%-32s %12.1f MB estimated", name + " footprint", ledger.estimatedBytes() / (1024.0 * 1024.0)));
+            bench(name + ".sumAmountCents", rows, ledger::sumAmountCents);
+            bench(name + ".sumCategoryCents", rows, () -> ledger.sumCategoryCents("Groceries"));
+            bench(name + ".sumBetweenCents (1 year)", rows, () -> ledger.sumBetweenCents(today - 365, today));
+        }
+    }
+
+    // Money in cents against the double path it replaced: the bulk sum over a
+    // primitive column, and per-category aggregation into a boxed map versus
+    // CategoryAmounts. Also prints how far the double sum has drifted.
+    private static void benchmarkMoney(int rows) throws Exception {
+        CONSOLE.println("== Money, " + rows + " amounts");
+        List<Transaction> transactions = syntheticTransactions(rows, SEED);
+        double[] doubles = new double[rows];
+        long[] cents = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            doubles[i] = transactions.get(i).getAmount();
+            cents[i] = transactions.get(i).getAmountCents();
+        }
+
+        bench("sum double[]", rows, () -> {
+            double sum = 0;
+            for (int i = 0; i < doubles.length; i++) {
+                sum += doubles[i];
+            }
+            return sum;
+        });
+        bench("Money.sum long[]", rows, () -> Money.sum(cents, 0, cents.length));
+
+        bench("aggregate Map<String, Double>", rows, () -> {
+            Map<String, Double> totals = new HashMap<>();
+            for (Transaction t : transactions) {
+                totals.merge(t.getCategory(), t.getAmount(), Double::sum);
+            }
+            return totals;
+        });
+        CategoryDictionary categories = new CategoryDictionary();
+        bench("aggregate CategoryAmounts", rows, () -> {
+            CategoryAmounts totals = new CategoryAmounts(categories);
+            for (Transaction t : transactions) {
+                totals.add(categories.idOf(t), t.getAmountCents());
+            }
+            return totals;
+        });
+
+        double doubleSum = 0;
+        for (double amount : doubles) {
+            doubleSum += amount;
+        }
+        long exact = Money.sum(cents, 0, cents.length);
+        CONSOLE.println(String.format("%-32s %s exact, double sum %s", "Sum drift", Money.format(exact), doubleSum));
+    }
+
+    // Concurrent ingestion, one thread per account, in chunks of 1000: every thread
+    // into one Account behind one lock, against a Portfolio where each account has
+    // its own partition and lock. Both sides use ObjectLedger, so only the locking
+    // differs. Then the cost of merging the per-account totals.
+    private static void benchmarkPortfolio(int rows) throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        CONSOLE.println("== Portfolio, " + rows + " transactions, " + threads + " accounts/threads");
+        List<Transaction> transactions = syntheticTransactions(rows, SEED);
+        List<List<Transaction>> chunks = new ArrayList<>();
+        int chunkSize = 1_000;
+        for (int start = 0; start < rows; start += chunkSize) {
+            List<Transaction> chunk = transactions.subList(start, Math.min(rows, start + chunkSize));
+            int accountId = 1 + (start / chunkSize) % threads;
+            for (Transaction t : chunk) {
+                t.setAccountId(accountId);
+            }
+            chunks.add(chunk);
+        }
+
+        CategoryDictionary categories = new CategoryDictionary();
+        bench("one Account, one lock", rows, () -> {
+            Account account = new Account(new ObjectLedger(), categories);
+            runPerAccount(threads, chunks, chunk -> {
+                synchronized (account) {
+                    account.addTransactions(chunk);
+                }
+            });
+            return account;
+        });
+        bench("Portfolio, lock per account", rows, () -> {
+            Portfolio portfolio = new Portfolio(categories, ObjectLedger::new);
+            runPerAccount(threads, chunks, portfolio::addAll);
+            return portfolio;
+        });
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.addAll(transactions);
+        int calls = 1_000;
+        bench("Portfolio.getCategoryTotals", calls, () -> {
+            long total = 0;
+            for (int i = 0; i < calls; i++) {
+                total += portfolio.getCategoryTotals().totalCents();
+            }
+            return total;
+        });
+    }
+
+    // Thread t gets the chunks of account t + 1
+    private static void runPerAccount(int threads, List<List<Transaction>> chunks,
+                                      java.util.function.Consumer<List<Transaction>> ingest) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                for (int i = first; i < chunks.size(); i += threads) {
+                    ingest.accept(chunks.get(i));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // Cost of one timed operation, single-threaded and with every core recording
+    // into the same timer, followed by the timers collected during this run
+    private static void benchmarkMetrics() throws Exception {
+        CONSOLE.println("== Metrics");
+        Metrics.Timer timer = Metrics.timer("Benchmarks", "overhead");
+        int calls = 1_000_000;
+        bench("Timer.recordSince", calls, () -> {
+            for (int i = 0; i < calls; i++) {
+                timer.recordSince(System.nanoTime());
+            }
+            return null;
+        });
+        int threads = Runtime.getRuntime().availableProcessors();
+        bench("Timer.recordSince (" + threads + " threads)", calls, () -> {
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    for (int i = 0; i < calls / threads; i++) {
+                        timer.recordSince(System.nanoTime());
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return null;
+        });
+        for (Metrics.Timer collected : Metrics.getTimers()) {
+            if (collected.getCount() > 0) {
+                CONSOLE.println(collected);
+            }
+        }
+    }
+
+    // Runs warmup iterations, then reports the mean, min and max of the measured ones
+    private static void bench(String name, int opsPerIteration, Operation operation) throws Exception {
+        long[] timings = new long[MEASURED_ITERATIONS];
+        System.setOut(QUIET);
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                sink = operation.run();
+            }
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                long start = System.nanoTime();
+                sink = operation.run();
+                timings[i] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        double meanMs = Arrays.stream(timings).average().orElse(0) / 1_000_000.0;
+        double minMs = Arrays.stream(timings).min().orElse(0) / 1_000_000.0;
+        double maxMs = Arrays.stream(timings).max().orElse(0) / 1_000_000.0;
+        double opsPerSecond = meanMs == 0 ? 0 : opsPerIteration / (meanMs / 1000.0);
+        CONSOLE.println(String.format("%-32s %12.3f ms/iter  %14.0f ops/s  (min %.3f, max %.3f)",
+                name, meanMs, opsPerSecond, minMs, maxMs));
+    }
+
+    // Transactions spread over the three years up to today, so the current month has data
+    static List<Transaction> syntheticTransactions(int count, long seed) {
+        Random random = new Random(seed);
+        long today = LocalDate.now().toEpochDay();
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double amount = (1 + random.nextInt(50_000)) / 100.0;
+            Date date = EpochDays.toDate(today - random.nextInt(3 * 365));
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            transactions.add(new Transaction(amount, date, "Synthetic " + i, category));
+        }
+        return transactions;
+    }
+
+    private static Account newAccount() {
+        Account account = new Account();
+        for (String category : CATEGORIES) {
+            account.addBudget(category, 1_000_000_000);
+        }
+        return account;
+    }
+
+    private static DatabaseHandler openDatabase(Path dir, String name) {
+        System.setOut(QUIET);
+        try {
+            return new DatabaseHandler("jdbc:sqlite:" + dir.resolve(name + ".db"));
+        } finally {
+            System.setOut(CONSOLE);
+        }
+    }
+
+    private static void closeDatabase(DatabaseHandler handler) {
+        handler.getTransactionsPool().close();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Stress check for ConcurrentAccount: many threads add transactions at once, half
+// of them one at a time and half in batches, all released together. Afterwards
+// the ledger, balance, category totals and budget spending must match what was
+// sent exactly, with nothing lost or counted twice. The same workload then runs
+// against an Account behind one lock, as the throughput baseline, and against a
+// bare Account to show what goes wrong without either. Exits with status 1 if the
+// concurrent or locked account loses anything.
+//
+//   java -cp "out:lib/*" ConcurrencyStress               (64 threads x 10k)
+//   java -cp "out:lib/*" ConcurrencyStress 256 5000
+public class ConcurrencyStress {
+    private static final String[] CATEGORIES = {
+            "Housing", "Groceries", "Transportation", "Entertainment", "Phone/Internet", "Miscellaneous",
+            "Savings", "Emergency", "Dining", "Health", "Travel", "Utilities"
+    };
+    private static final int BATCH_SIZE = 100;
+    private static final int ROUNDS = 5;
+
+    interface Target {
+        void add(Transaction transaction);
+
+        void addAll(List<Transaction> batch);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        List<List<Transaction>> work = new ArrayList<>();
+        long[] expected = new long[CATEGORIES.length];
+        Date date = EpochDays.toDate(LocalDate.now().toEpochDay());
+        for (int t = 0; t < threads; t++) {
+            List<Transaction> transactions = new ArrayList<>(perThread);
+            for (int i = 0; i < perThread; i++) {
+                int category = (t + i) % CATEGORIES.length;
+                long amountCents = 1 + (t * 7919L + i * 31L) % 50_000;
+                transactions.add(Transaction.ofCents(0, amountCents, date, "stress", CATEGORIES[category], -1));
+                expected[category] += amountCents;
+            }
+            work.add(transactions);
+        }
+        int total = threads * perThread;
+        System.out.println(threads + " threads x " + perThread + " transactions, best of " + ROUNDS + " rounds");
+
+        int failures = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentAccount account = new ConcurrentAccount();
+            addBudgets(account::addBudget);
+            best = Math.min(best, run(work, new Target() {
+                public void add(Transaction transaction) {
+                    account.addTransaction(transaction);
+                }
+
+                public void addAll(List<Transaction> batch) {
+                    account.addTransactions(batch);
+                }
+            }));
+            failures += verify("ConcurrentAccount", account.getTransactions().size(), account.getTotalBalanceCents(),
+                    account::getCategoryTotalCents, category -> account.getBudgets().get(category).getSpentCents(),
+                    total, expected, round == ROUNDS - 1);
+        }
+        report("ConcurrentAccount", total, best);
+
+        best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            Account account = new Account();
+            addBudgets(account::addBudget);
+            best = Math.min(best, run(work, new Target() {
+                public void add(Transaction transaction) {
+                    synchronized (account) {
+                        account.addTransaction(transaction);
+                    }
+                }
+
+                public void addAll(List<Transaction> batch) {
+                    synchronized (account) {
+                        account.addTransactions(batch);
+                    }
+                }
+            }));
+            failures += verify("synchronized Account", account.getTransactions().size(), account.getTotalBalanceCents(),
+                    account::getCategoryTotalCents, category -> account.getBudgets().get(category).getSpentCents(),
+                    total, expected, round == ROUNDS - 1);
+        }
+        report("synchronized Account", total, best);
+
+        // No lock at all: expected to lose updates or throw; reported, not counted
+        Account unsafe = new Account();
+        addBudgets(unsafe::addBudget);
+        try {
+            run(work, new Target() {
+                public void add(Transaction transaction) {
+                    unsafe.addTransaction(transaction);
+                }
+
+                public void addAll(List<Transaction> batch) {
+                    unsafe.addTransactions(batch);
+                }
+            });
+            verify("unsynchronized Account", unsafe.getTransactions().size(), unsafe.getTotalBalanceCents(),
+                    unsafe::getCategoryTotalCents, category -> unsafe.getBudgets().get(category).getSpentCents(),
+                    total, expected, true);
+        } catch (RuntimeException e) {
+            System.out.println("unsynchronized Account: " + e);
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("No lost updates");
+    }
+
+    private interface BudgetAdder {
+        void addBudget(String category, double limit);
+    }
+
+    private static void addBudgets(BudgetAdder account) {
+        for (String category : CATEGORIES) {
+            account.addBudget(category, 1_000_000_000);
+        }
+    }
+
+    // Even threads add one at a time, odd threads in batches; returns elapsed nanos
+    private static long run(List<List<Transaction>> work, Target target) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[work.size()];
+        for (int t = 0; t < workers.length; t++) {
+            List<Transaction> transactions = work.get(t);
+            boolean batched = t % 2 == 1;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    if (batched) {
+                        for (int i = 0; i < transactions.size(); i += BATCH_SIZE) {
+                            target.addAll(transactions.subList(i, Math.min(transactions.size(), i + BATCH_SIZE)));
+                        }
+                    } else {
+                        for (Transaction transaction : transactions) {
+                            target.add(transaction);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return elapsed;
+    }
+
+    private interface CategoryReader {
+        long read(String category);
+    }
+
+    // Returns the number of mismatches; prints them, and the summary line if last
+    private static int verify(String name, int size, long balance, CategoryReader totals, CategoryReader spent,
+                              int expectedSize, long[] expected, boolean print) {
+        List<String> problems = new ArrayList<>();
+        long expectedBalance = 0;
+        for (long amount : expected) {
+            expectedBalance += amount;
+        }
+        if (size != expectedSize) {
+            problems.add("ledger has " + size + " of " + expectedSize + " transactions");
+        }
+        if (balance != expectedBalance) {
+            problems.add("balance " + Money.format(balance) + ", expected " + Money.format(expectedBalance));
+        }
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            if (totals.read(CATEGORIES[c]) != expected[c]) {
+                problems.add(CATEGORIES[c] + " total off by " + Money.format(expected[c] - totals.read(CATEGORIES[c])));
+            }
+            if (spent.read(CATEGORIES[c]) != expected[c]) {
+                problems.add(CATEGORIES[c] + " budget off by " + Money.format(expected[c] - spent.read(CATEGORIES[c])));
+            }
+        }
+        if (print || !problems.isEmpty()) {
+            System.out.println(name + ": " + (problems.isEmpty() ? "all totals exact" : String.join("; ", problems)));
+        }
+        return problems.size();
+    }
+
+    private static void report(String name, int total, long nanos) {
+        System.out.println(String.format("%-24s %8.1f ms %12.0f adds/s", name, nanos / 1e6, total / (nanos / 1e9)));
+    }
+}
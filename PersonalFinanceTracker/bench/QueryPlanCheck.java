@@ -0,0 +1,116 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Regression check for TransactionQuery: every filtered query must be answered
+// from an index, never a full scan, and must return exactly the rows a plain Java
+// filter over the whole table would. Exits with status 1 if any check fails, so
+// it can gate a build script.
+//
+//   java -cp "out:lib/*" QueryPlanCheck          (20k rows)
+//   java -cp "out:lib/*" QueryPlanCheck 200000
+public class QueryPlanCheck {
+    private static final PrintStream CONSOLE = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path dir = Files.createTempDirectory("finance-plan-check");
+        LocalDate today = LocalDate.now();
+        LocalDate yearAgo = today.minusYears(1);
+
+        Map<TransactionQuery, Predicate<Transaction>> queries = new LinkedHashMap<>();
+        queries.put(new TransactionQuery().between(yearAgo, today),
+                t -> inRange(t, yearAgo, today));
+        queries.put(new TransactionQuery().from(today.minusDays(30)),
+                t -> inRange(t, today.minusDays(30), null));
+        queries.put(new TransactionQuery().inCategories("Dining", "Travel"),
+                t -> t.getCategory().equals("Dining") || t.getCategory().equals("Travel"));
+        queries.put(new TransactionQuery().inCategories("Groceries").between(yearAgo, today),
+                t -> t.getCategory().equals("Groceries") && inRange(t, yearAgo, today));
+        queries.put(new TransactionQuery().amountBetweenCents(100_00L, 150_00L),
+                t -> t.getAmountCents() >= 100_00 && t.getAmountCents() <= 150_00);
+        queries.put(new TransactionQuery().amountBetweenCents(null, 5_00L),
+                t -> t.getAmountCents() <= 5_00);
+        queries.put(new TransactionQuery().between(yearAgo, today).amountBetweenCents(400_00L, null),
+                t -> inRange(t, yearAgo, today) && t.getAmountCents() >= 400_00);
+        queries.put(new TransactionQuery().inCategories("Health", "Utilities").between(yearAgo, today).amountBetween(10.0, 20.0),
+                t -> (t.getCategory().equals("Health") || t.getCategory().equals("Utilities"))
+                        && inRange(t, yearAgo, today) && t.getAmountCents() >= 10_00 && t.getAmountCents() <= 20_00);
+        queries.put(new TransactionQuery().inAccount(2).between(yearAgo, today),
+                t -> t.getAccountId() == 2 && inRange(t, yearAgo, today));
+
+        int failures = 0;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        DatabaseHandler handler;
+        List<Transaction> all;
+        try {
+            handler = new DatabaseHandler("jdbc:sqlite:" + dir.resolve("plans.db"));
+            List<Transaction> rowsToInsert = Benchmarks.syntheticTransactions(rows, 42);
+            int second = handler.createAccount("Credit card");
+            for (int i = 0; i < rowsToInsert.size(); i += 3) {
+                rowsToInsert.get(i).setAccountId(second);
+            }
+            handler.insertTransactions(rowsToInsert);
+            all = handler.getAllTransactions();
+        } finally {
+            System.setOut(CONSOLE);
+        }
+
+        try {
+            for (Map.Entry<TransactionQuery, Predicate<Transaction>> entry : queries.entrySet()) {
+                TransactionQuery query = entry.getKey();
+                QueryPlan plan = handler.explain(query);
+                List<Long> expected = new ArrayList<>();
+                for (Transaction t : all) {
+                    if (entry.getValue().test(t)) {
+                        expected.add(t.getId());
+                    }
+                }
+                List<Long> actual = new ArrayList<>();
+                long start = System.nanoTime();
+                handler.forEachTransactionWhile(query, t -> actual.add(t.getId()));
+                double millis = (System.nanoTime() - start) / 1e6;
+
+                boolean indexed = plan != null && !plan.isFullScan();
+                boolean correct = actual.equals(expected);
+                CONSOLE.println(String.format("%s %s: %d rows in %.1f ms, indexes %s",
+                        indexed && correct ? "ok  " : "FAIL", query, actual.size(), millis,
+                        plan == null ? "?" : plan.getIndexes()));
+                if (!indexed) {
+                    CONSOLE.println("     full scan: " + plan);
+                    failures++;
+                }
+                if (!correct) {
+                    CONSOLE.println("     expected " + expected.size() + " rows, got " + actual.size());
+                    failures++;
+                }
+            }
+        } finally {
+            handler.getTransactionsPool().close();
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        if (failures > 0) {
+            CONSOLE.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        CONSOLE.println("All " + queries.size() + " queries use an index");
+    }
+
+    private static boolean inRange(Transaction t, LocalDate from, LocalDate to) {
+        long day = EpochDays.toEpochDay(t.getDate());
+        return (from == null || day >= from.toEpochDay()) && (to == null || day <= to.toEpochDay());
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Load test for FinanceServer over localhost: a server on a fresh database in a
+// temporary directory, and N client threads sending a fixed mix of requests for
+// a set time (half single posts, one in ten a 100-row batch, the rest balance,
+// budget and rollup reads). Prints client-side latency and throughput per request
+// type, then the server's own /metrics. Exits with status 1 if any request fails
+// or the final balance differs from the sum of what was posted.
+//
+//   java -cp "out:lib/*" ServerLoadTest             (32 clients, 10 seconds)
+//   java -cp "out:lib/*" ServerLoadTest 64 30
+public class ServerLoadTest {
+    private static final PrintStream CONSOLE = System.out;
+    private static final int BATCH_SIZE = 100;
+    private static final String[] CATEGORIES = {"Groceries", "Dining", "Travel", "Utilities", "Health"};
+    private static final String[] OPERATIONS = {"post", "post batch", "balance", "budgets", "rollups"};
+    private static final int[] MIX = {0, 0, 0, 0, 0, 1, 2, 2, 3, 4};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path dir = Files.createTempDirectory("finance-load");
+        Metrics.Timer[] timers = new Metrics.Timer[OPERATIONS.length];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            timers[i] = Metrics.timer("LoadTest", OPERATIONS[i]);
+        }
+        LongAdder postedCents = new LongAdder();
+        AtomicLong failures = new AtomicLong();
+
+        // The database and journal log every row; keep that out of the report
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        DatabaseHandler handler = new DatabaseHandler("jdbc:sqlite:" + dir.resolve("load.db"));
+        TransactionJournal journal = new TransactionJournal(dir.resolve("load.journal"), handler);
+        DataService dataService = new DataService(handler, journal);
+        dataService.insertBudgetCents("Groceries", 100_000_00).join();
+        FinanceServer server = new FinanceServer(dataService, 0, 16);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getPort();
+        HttpClient client = HttpClient.newHttpClient();
+
+        try {
+            CONSOLE.println(clients + " clients for " + seconds + "s against " + base);
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            Thread[] workers = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                Random random = new Random(c);
+                workers[c] = new Thread(() -> {
+                    for (int i = 0; System.nanoTime() < deadline; i++) {
+                        int operation = MIX[i % MIX.length];
+                        long cents = 0;
+                        HttpRequest request;
+                        if (operation <= 1) {
+                            StringBuilder body = new StringBuilder("amount,date,description,category\n");
+                            for (int row = 0; row < (operation == 0 ? 1 : BATCH_SIZE); row++) {
+                                long amount = 1 + random.nextInt(20_000);
+                                cents += amount;
+                                body.append(Money.format(amount)).append(',')
+                                        .append(LocalDate.now().minusDays(random.nextInt(400))).append(',')
+                                        .append("\"Load, \"\"row\"\" ").append(row).append("\",")
+                                        .append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append('\n');
+                            }
+                            request = HttpRequest.newBuilder(URI.create(base + "/transactions"))
+                                    .header("Content-Type", "text/csv")
+                                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build();
+                        } else {
+                            String path = operation == 2 ? "/balance" : operation == 3 ? "/budgets" : "/rollups";
+                            request = HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                timers[operation].recordError();
+                                if (failures.getAndIncrement() < 5) {
+                                    CONSOLE.println(OPERATIONS[operation] + ": " + response.statusCode() + " " + response.body());
+                                }
+                            } else {
+                                postedCents.add(cents);
+                            }
+                        } catch (Exception e) {
+                            timers[operation].recordError();
+                            failures.incrementAndGet();
+                        } finally {
+                            timers[operation].recordSince(start);
+                        }
+                    }
+                });
+                workers[c].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            long requests = 0;
+            for (Metrics.Timer timer : timers) {
+                requests += timer.getCount();
+                CONSOLE.println(String.format("%-12s %8d requests %9.1f/s  p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms",
+                        timer.getName(), timer.getCount(), timer.getCount() / (double) seconds,
+                        timer.getP50Millis(), timer.getP99Millis(), timer.getMaxMillis()));
+            }
+            CONSOLE.println(String.format("%-12s %8d requests %9.1f/s", "total", requests, requests / (double) seconds));
+
+            // Journaled posts reach the database on the journal's next flush
+            long expected = postedCents.sum();
+            long balance = -1;
+            for (int attempt = 0; attempt < 50 && balance != expected; attempt++) {
+                Thread.sleep(100);
+                String body = client.send(HttpRequest.newBuilder(URI.create(base + "/balance")).build(),
+                        HttpResponse.BodyHandlers.ofString()).body();
+                balance = Long.parseLong(body.replaceAll(".*\"cents\":(-?\\d+).*", "$1"));
+            }
+            CONSOLE.println("Posted " + Money.format(expected) + ", server balance " + Money.format(balance));
+            if (balance != expected) {
+                failures.incrementAndGet();
+            }
+            CONSOLE.println("Server metrics:");
+            CONSOLE.print(client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body().replaceAll("(?m)^(?!Server\\.).*\\R", ""));
+        } finally {
+            server.stop(0);
+            dataService.shutdown();
+            journal.close();
+            handler.getTransactionsPool().close();
+            System.setOut(CONSOLE);
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        if (failures.get() > 0) {
+            CONSOLE.println(failures.get() + " failure(s)");
+            System.exit(1);
+        }
+        CONSOLE.println("All requests succeeded and the balance matches");
+    }
+}
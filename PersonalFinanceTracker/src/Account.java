@@ -1,35 +1,148 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+// Not thread-safe; importers that add from several threads use ConcurrentAccount
 public class Account {
-    private List<Transaction> transactions;
+    private Ledger ledger;
     private Map<String, Budget> budgets;
+    // Categories as dense ids; budgets and totals below are arrays indexed by id
+    private final CategoryDictionary categories;
+    private Budget[] budgetsById = new Budget[16];
+    // Running totals in cents, updated on every add so balance queries don't rescan the list
+    private long totalBalanceCents;
+    private long[] categoryTotals = new long[16];
+    // Transactions per category, so a category whose amounts cancel out still counts as present
+    private int[] categoryCounts = new int[16];
 
     public Account() {
-        this.transactions = new ArrayList<>();
+        this(new ObjectLedger());
+    }
+
+    // Use a ColumnarLedger for large histories
+    public Account(Ledger ledger) {
+        this(ledger, new CategoryDictionary());
+    }
+
+    // Sharing DatabaseHandler's dictionary lets transactions read from the database skip the name lookup
+    public Account(Ledger ledger, CategoryDictionary categories) {
+        this.ledger = ledger;
         this.budgets = new HashMap<>();
+        this.categories = categories;
     }
 
     public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        String category = transaction.getCategory();
-        if (budgets.containsKey(category)) {
-            budgets.get(category).addSpending(transaction.getAmount());
+        ledger.add(transaction);
+        int categoryId = categories.idOf(transaction);
+        recordTotals(categoryId, transaction.getAmountCents());
+        Budget budget = budgetFor(categoryId);
+        if (budget != null) {
+            budget.addSpendingCents(transaction.getAmountCents());
+        }
+    }
+
+    // Bulk variant of addTransaction: budgets are updated once per category for the whole batch
+    public void addTransactions(Collection<Transaction> batch) {
+        int[] categoryIds = new int[batch.size()];
+        int index = 0;
+        for (Transaction transaction : batch) {
+            categoryIds[index++] = categories.idOf(transaction);
+        }
+        ledger.addAll(batch);
+
+        long[] spending = new long[categories.capacity()];
+        index = 0;
+        for (Transaction transaction : batch) {
+            int categoryId = categoryIds[index++];
+            recordTotals(categoryId, transaction.getAmountCents());
+            if (categoryId >= 0) {
+                spending[categoryId] += transaction.getAmountCents();
+            }
+        }
+        for (int categoryId = 0; categoryId < spending.length; categoryId++) {
+            Budget budget = budgetFor(categoryId);
+            if (budget != null && spending[categoryId] != 0) {
+                budget.addSpendingCents(spending[categoryId]);
+            }
         }
     }
 
     public double calculateTotalBalance() {
-        double balance = 0;
-        for (Transaction transaction : transactions) {
-            balance += transaction.getAmount();
+        return Money.toAmount(totalBalanceCents);
+    }
+
+    public long getTotalBalanceCents() {
+        return totalBalanceCents;
+    }
+
+    public double getCategoryTotal(String category) {
+        return Money.toAmount(getCategoryTotalCents(category));
+    }
+
+    public long getCategoryTotalCents(String category) {
+        int categoryId = categories.lookup(category);
+        return categoryId >= 0 && categoryId < categoryTotals.length ? categoryTotals[categoryId] : 0;
+    }
+
+    // Adds this account's total for every category with transactions, e.g. to merge several accounts
+    public void addCategoryTotalsTo(CategoryAmounts totals) {
+        for (int categoryId = 0; categoryId < categoryCounts.length; categoryId++) {
+            if (categoryCounts[categoryId] > 0) {
+                totals.add(categoryId, categoryTotals[categoryId]);
+            }
+        }
+    }
+
+    // Sum of amounts dated between from and to, inclusive
+    public double sumBetween(Date from, Date to) {
+        return Money.toAmount(sumBetweenCents(from, to));
+    }
+
+    public long sumBetweenCents(Date from, Date to) {
+        return ledger.sumBetweenCents(EpochDays.toEpochDay(from), EpochDays.toEpochDay(to));
+    }
+
+    private Budget budgetFor(int categoryId) {
+        return categoryId >= 0 && categoryId < budgetsById.length ? budgetsById[categoryId] : null;
+    }
+
+    private void recordTotals(int categoryId, long amountCents) {
+        totalBalanceCents += amountCents;
+        if (categoryId < 0) {
+            return;
+        }
+        if (categoryId >= categoryTotals.length) {
+            categoryTotals = Arrays.copyOf(categoryTotals, Math.max(categoryTotals.length * 2, categoryId + 1));
+            categoryCounts = Arrays.copyOf(categoryCounts, categoryTotals.length);
+        }
+        categoryTotals[categoryId] += amountCents;
+        categoryCounts[categoryId]++;
+    }
+
+    // Only needed when the transaction list is replaced wholesale
+    private void rebuildTotals() {
+        totalBalanceCents = 0;
+        Arrays.fill(categoryTotals, 0);
+        Arrays.fill(categoryCounts, 0);
+        for (Transaction transaction : ledger.getTransactions()) {
+            recordTotals(categories.idOf(transaction), transaction.getAmountCents());
         }
-        return balance;
     }
 
     public void addBudget(String category, double limit) {
-        budgets.put(category, new Budget(category, limit));
+        Budget budget = new Budget(category, limit);
+        budgets.put(category, budget);
+        int categoryId = categories.idOf(category);
+        if (categoryId < 0) {
+            return;
+        }
+        if (categoryId >= budgetsById.length) {
+            budgetsById = Arrays.copyOf(budgetsById, Math.max(budgetsById.length * 2, categoryId + 1));
+        }
+        budgetsById[categoryId] = budget;
     }
 
     public void checkBudgets() {
@@ -48,10 +161,19 @@ public class Account {
 
     // Getters and setters for transactions
     public List<Transaction> getTransactions() {
-        return transactions;
+        return ledger.getTransactions();
     }
 
     public void setTransactions(List<Transaction> transactions) {
-        this.transactions = transactions;
+        ledger.replaceAll(transactions);
+        rebuildTotals();
+    }
+
+    public CategoryDictionary getCategories() {
+        return categories;
+    }
+
+    public Ledger getLedger() {
+        return ledger;
     }
 }
@@ -0,0 +1,49 @@
+// Outcome of DatabaseHandler.insertTransactions: one flag per input row plus throughput
+public class BatchInsertResult {
+    private final boolean[] outcomes;
+    private final long elapsedNanos;
+    private final int insertedCount;
+
+    public BatchInsertResult(boolean[] outcomes, long elapsedNanos) {
+        this.outcomes = outcomes;
+        this.elapsedNanos = elapsedNanos;
+        int inserted = 0;
+        for (boolean outcome : outcomes) {
+            if (outcome) {
+                inserted++;
+            }
+        }
+        this.insertedCount = inserted;
+    }
+
+    // True if the row at this position (in the input collection's iteration order) was inserted
+    public boolean isInserted(int index) {
+        return outcomes[index];
+    }
+
+    public int getRowCount() {
+        return outcomes.length;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public int getFailedCount() {
+        return outcomes.length - insertedCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : insertedCount * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchInsertResult{inserted=%d, failed=%d, elapsed=%.1fms, rowsPerSecond=%.0f}",
+                insertedCount, getFailedCount(), elapsedNanos / 1_000_000.0, getRowsPerSecond());
+    }
+}
@@ -1,25 +1,48 @@
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// Limit and spent amount are held in cents (see Money); the double accessors
+// convert for display and for callers that work in whole currency units.
+// Spending may be added from several threads at once (ConcurrentAccount), so
+// addSpendingCents is an atomic add rather than a plain +=. A refund (negative
+// amount) lowers spending, as the database triggers do, so spent is negative
+// when refunds outweigh purchases; it is reported as is, never clamped.
 public class Budget {
+    private static final AtomicLongFieldUpdater<Budget> SPENT =
+            AtomicLongFieldUpdater.newUpdater(Budget.class, "spentCents");
+
     private String category;
-    private double limit;
-    private double spent;
+    private volatile long limitCents;
+    private volatile long spentCents;
 
     public Budget(String category, double limit) {
+        this(category, Money.toCents(limit), 0);
+    }
+
+    private Budget(String category, long limitCents, long spentCents) {
         this.category = category;
-        this.limit = limit;
-        this.spent = 0;
+        this.limitCents = limitCents;
+        this.spentCents = spentCents;
+    }
+
+    public static Budget ofCents(String category, long limitCents, long spentCents) {
+        if (limitCents < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        return new Budget(category, limitCents, spentCents);
     }
 
     // Method to add spending to the budget
     public void addSpending(double amount) {
-        if (amount < 0) {
-            throw new IllegalArgumentException("Amount cannot be negative");
-        }
-        this.spent += amount;
+        addSpendingCents(Money.toCents(amount));
+    }
+
+    public void addSpendingCents(long amountCents) {
+        SPENT.addAndGet(this, amountCents);
     }
 
     // Check if the budget limit is exceeded
     public boolean isOverLimit() {
-        return spent > limit;
+        return spentCents > limitCents;
     }
 
     // Getters and Setters
@@ -28,29 +51,43 @@ public class Budget {
     }
 
     public double getLimit() {
-        return limit;
+        return Money.toAmount(limitCents);
     }
 
     public double getSpent() {
-        return spent;
+        return Money.toAmount(spentCents);
+    }
+
+    public long getLimitCents() {
+        return limitCents;
+    }
+
+    public long getSpentCents() {
+        return spentCents;
     }
 
     public void setLimit(double limit) {
-        if (limit < 0) {
+        setLimitCents(Money.toCents(limit));
+    }
+
+    public void setLimitCents(long limitCents) {
+        if (limitCents < 0) {
             throw new IllegalArgumentException("Limit cannot be negative");
         }
-        this.limit = limit;
+        this.limitCents = limitCents;
     }
 
     public void setSpent(double spent) {
-        if (spent < 0) {
-            throw new IllegalArgumentException("Spent amount cannot be negative");
-        }
-        this.spent = spent;
+        setSpentCents(Money.toCents(spent));
+    }
+
+    public void setSpentCents(long spentCents) {
+        this.spentCents = spentCents;
     }
 
     @Override
     public String toString() {
-        return String.format("Budget{category='%s', limit=%.2f, spent=%.2f}", category, limit, spent);
+        return "Budget{category='" + category + "', limit=" + Money.format(limitCents)
+                + ", spent=" + Money.format(spentCents) + "}";
     }
 }
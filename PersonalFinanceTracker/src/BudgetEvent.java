@@ -0,0 +1,63 @@
+// A budget moved across one of BudgetTracker's thresholds. Thresholds are
+// fractions of the limit, e.g. 0.8 for 80%; 0 means below every threshold.
+// Amounts are in cents (see Money).
+public class BudgetEvent {
+    private final String category;
+    private final long limitCents;
+    private final long spentCents;
+    private final double previousThreshold;
+    private final double threshold;
+
+    public BudgetEvent(String category, long limitCents, long spentCents, double previousThreshold, double threshold) {
+        this.category = category;
+        this.limitCents = limitCents;
+        this.spentCents = spentCents;
+        this.previousThreshold = previousThreshold;
+        this.threshold = threshold;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public double getLimit() {
+        return Money.toAmount(limitCents);
+    }
+
+    public double getSpent() {
+        return Money.toAmount(spentCents);
+    }
+
+    public long getLimitCents() {
+        return limitCents;
+    }
+
+    public long getSpentCents() {
+        return spentCents;
+    }
+
+    // Highest threshold reached before the change
+    public double getPreviousThreshold() {
+        return previousThreshold;
+    }
+
+    // Highest threshold reached now
+    public double getThreshold() {
+        return threshold;
+    }
+
+    // True when spending went up past a threshold, false when it fell back below one
+    public boolean isRising() {
+        return threshold > previousThreshold;
+    }
+
+    public boolean isOverLimit() {
+        return spentCents > limitCents;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BudgetEvent{category='%s', limit=%s, spent=%s, threshold=%.0f%% -> %.0f%%}",
+                category, Money.format(limitCents), Money.format(spentCents), previousThreshold * 100, threshold * 100);
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-memory mirror of the limit and spent amount of each budget of the default
+// account, kept current as transactions arrive. The persisted spent column is
+// maintained by triggers in the database. Listeners hear about a budget only when
+// its spending crosses one of the thresholds (80% and 100% of the limit by
+// default), so nobody has to rescan every budget after each transaction. State is
+// held in arrays indexed by category id, amounts in cents.
+public class BudgetTracker {
+    public static final double[] DEFAULT_THRESHOLDS = {0.8, 1.0};
+
+    public interface Listener {
+        void budgetThresholdCrossed(BudgetEvent event);
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private final CategoryDictionary categories;
+    private final double[] thresholds;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean[] hasBudget = new boolean[0];
+    private long[] limits = new long[0];
+    private long[] spent = new long[0];
+    // Index of the highest threshold reached + 1, or 0 if none
+    private int[] levels = new int[0];
+
+    public BudgetTracker(DatabaseHandler databaseHandler) {
+        this(databaseHandler, DEFAULT_THRESHOLDS);
+    }
+
+    public BudgetTracker(DatabaseHandler databaseHandler, double... thresholds) {
+        this.databaseHandler = databaseHandler;
+        this.categories = databaseHandler.getCategories();
+        this.thresholds = thresholds.clone();
+        Arrays.sort(this.thresholds);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Reads the persisted budgets. Does not emit events.
+    public synchronized void load() {
+        hasBudget = new boolean[0];
+        limits = new long[0];
+        spent = new long[0];
+        levels = new int[0];
+        for (Budget budget : databaseHandler.getAllBudgets()) {
+            int id = slot(budget.getCategory());
+            hasBudget[id] = true;
+            limits[id] = budget.getLimitCents();
+            spent[id] = budget.getSpentCents();
+            levels[id] = levelOf(spent[id], limits[id]);
+        }
+    }
+
+    // Adds a transaction's amount to its category's budget, if there is one
+    public synchronized void recordSpending(String category, long amountCents) {
+        int id = categories.lookup(category);
+        if (id < 0 || id >= hasBudget.length || !hasBudget[id] || amountCents == 0) {
+            return;
+        }
+        spent[id] += amountCents;
+        updateLevel(id);
+    }
+
+    public synchronized void addBudget(String category, long limitCents) {
+        int id = slot(category);
+        long current = databaseHandler.getCategoryTotals(Transaction.DEFAULT_ACCOUNT_ID).getCents(id);
+        hasBudget[id] = true;
+        limits[id] = limitCents;
+        spent[id] = current;
+        levels[id] = 0;
+        updateLevel(id);
+    }
+
+    // A new limit can move a budget across thresholds in either direction
+    public synchronized void setLimit(String category, long limitCents) {
+        int id = categories.lookup(category);
+        if (id < 0 || id >= hasBudget.length || !hasBudget[id]) {
+            return;
+        }
+        limits[id] = limitCents;
+        updateLevel(id);
+    }
+
+    public synchronized void removeBudget(String category) {
+        int id = categories.lookup(category);
+        if (id >= 0 && id < hasBudget.length) {
+            hasBudget[id] = false;
+        }
+    }
+
+    // Current state of every budget, from memory
+    public synchronized List<Budget> getBudgets() {
+        List<Budget> budgets = new ArrayList<>();
+        for (int id = 0; id < hasBudget.length; id++) {
+            if (hasBudget[id]) {
+                budgets.add(Budget.ofCents(categories.nameOf(id), limits[id], spent[id]));
+            }
+        }
+        return budgets;
+    }
+
+    public synchronized long getSpentCents(String category) {
+        int id = categories.lookup(category);
+        return id >= 0 && id < hasBudget.length && hasBudget[id] ? spent[id] : 0;
+    }
+
+    private void updateLevel(int id) {
+        int level = levelOf(spent[id], limits[id]);
+        if (level == levels[id]) {
+            return;
+        }
+        BudgetEvent event = new BudgetEvent(categories.nameOf(id), limits[id], spent[id],
+                thresholdAt(levels[id]), thresholdAt(level));
+        levels[id] = level;
+        for (Listener listener : listeners) {
+            listener.budgetThresholdCrossed(event);
+        }
+    }
+
+    // A threshold is reached once spending is strictly above it, so the 100% level
+    // agrees with Budget.isOverLimit and the over-limit index (spent > limit)
+    private int levelOf(long amountCents, long limitCents) {
+        int level = 0;
+        while (level < thresholds.length && amountCents > thresholds[level] * limitCents) {
+            level++;
+        }
+        return level;
+    }
+
+    private double thresholdAt(int level) {
+        return level == 0 ? 0 : thresholds[level - 1];
+    }
+
+    // Array index for a category, growing the arrays when the dictionary has grown
+    private int slot(String category) {
+        int id = categories.idOf(category);
+        if (id >= hasBudget.length) {
+            int size = Math.max(categories.capacity(), id + 1);
+            hasBudget = Arrays.copyOf(hasBudget, size);
+            limits = Arrays.copyOf(limits, size);
+            spent = Arrays.copyOf(spent, size);
+            levels = Arrays.copyOf(levels, size);
+        }
+        return id;
+    }
+}
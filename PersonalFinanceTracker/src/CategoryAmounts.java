@@ -0,0 +1,135 @@
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+// Amount in cents per category, stored in a long[] indexed by CategoryDictionary
+// id instead of a HashMap<String, Double>: no boxing, no hashing, and the total is
+// one Money.sum over the array. Categories never set are absent rather than zero.
+public class CategoryAmounts {
+    public interface Visitor {
+        void accept(String category, long cents);
+    }
+
+    private final CategoryDictionary categories;
+    private long[] cents = new long[0];
+    private boolean[] present = new boolean[0];
+    private int size;
+
+    public CategoryAmounts(CategoryDictionary categories) {
+        this.categories = categories;
+    }
+
+    public void put(int categoryId, long amountCents) {
+        slot(categoryId);
+        cents[categoryId] = amountCents;
+    }
+
+    public void add(int categoryId, long amountCents) {
+        slot(categoryId);
+        cents[categoryId] += amountCents;
+    }
+
+    public void add(String category, long amountCents) {
+        add(categories.idOf(category), amountCents);
+    }
+
+    // Adds every category of other into this one; both must use the same dictionary
+    public void addAll(CategoryAmounts other) {
+        if (other.categories != categories) {
+            throw new IllegalArgumentException("Amounts use a different category dictionary");
+        }
+        for (int id = 0; id < other.present.length; id++) {
+            if (other.present[id]) {
+                add(id, other.cents[id]);
+            }
+        }
+    }
+
+    // 0 if the category is absent
+    public long getCents(String category) {
+        return getCents(categories.lookup(category));
+    }
+
+    public long getCents(int categoryId) {
+        return categoryId >= 0 && categoryId < cents.length ? cents[categoryId] : 0;
+    }
+
+    public boolean containsKey(String category) {
+        int id = categories.lookup(category);
+        return id >= 0 && id < present.length && present[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long totalCents() {
+        return Money.sum(cents, 0, cents.length);
+    }
+
+    // In category id order
+    public void forEach(Visitor visitor) {
+        for (int id = 0; id < present.length; id++) {
+            if (present[id]) {
+                visitor.accept(categories.nameOf(id), cents[id]);
+            }
+        }
+    }
+
+    private void slot(int categoryId) {
+        if (categoryId < 0) {
+            throw new IllegalArgumentException("Category id cannot be negative");
+        }
+        if (categoryId >= cents.length) {
+            int length = Math.max(categories.capacity(), categoryId + 1);
+            cents = Arrays.copyOf(cents, length);
+            present = Arrays.copyOf(present, length);
+        }
+        if (!present[categoryId]) {
+            present[categoryId] = true;
+            size++;
+        }
+    }
+
+    // Same categories with the same amounts; array capacity does not matter
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CategoryAmounts)) {
+            return false;
+        }
+        CategoryAmounts other = (CategoryAmounts) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int id = 0; id < present.length; id++) {
+            if (present[id] && (id >= other.present.length || !other.present[id] || cents[id] != other.cents[id])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int id = 0; id < present.length; id++) {
+            if (present[id]) {
+                hash += id ^ Long.hashCode(cents[id]);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner text = new StringJoiner(", ", "{", "}");
+        forEach((category, amountCents) -> text.add(category + "=" + Money.format(amountCents)));
+        return text.toString();
+    }
+}
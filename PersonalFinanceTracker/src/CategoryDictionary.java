@@ -0,0 +1,104 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Bidirectional map between category names and dense int ids. Every name is kept
+// as one canonical String instance, so a Transaction whose category is that same
+// instance can be matched to its id by reference instead of hashing the string.
+// Lookups are lock-free; assigning a new id is synchronized.
+public class CategoryDictionary {
+    // Chooses the id for a name that is not in the dictionary yet
+    public interface IdAllocator {
+        int allocate(String name);
+    }
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final IdAllocator allocator;
+    private volatile String[] names = new String[16];
+    private volatile int nextId;
+
+    // In-memory dictionary: ids are assigned 0, 1, 2, ...
+    public CategoryDictionary() {
+        this.allocator = null;
+    }
+
+    // Dictionary whose ids come from elsewhere, e.g. the categories table
+    public CategoryDictionary(IdAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    // Id for the name, assigning a new one if needed; -1 for a null name
+    public int idOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (allocator != null) {
+            int allocated = allocator.allocate(name);
+            register(allocated, name);
+            return allocated;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                id = nextId;
+                register(id, name);
+            }
+            return id;
+        }
+    }
+
+    // Id for the transaction's category, skipping the hash lookup when the
+    // transaction already carries an id whose canonical name it references
+    public int idOf(Transaction transaction) {
+        int id = transaction.getCategoryId();
+        String[] current = names;
+        if (id >= 0 && id < current.length && current[id] == transaction.getCategory()) {
+            return id;
+        }
+        return idOf(transaction.getCategory());
+    }
+
+    // Id for the name, or -1 if it has none
+    public int lookup(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    // Records a known (id, name) pair, e.g. one loaded from the database
+    public synchronized void register(int id, String name) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Category id cannot be negative");
+        }
+        String canonical = nameOf(id);
+        if (canonical != null) {
+            return; // Already known; keep the existing canonical instance
+        }
+        String[] current = names;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, id + 1));
+        } else {
+            current = current.clone();
+        }
+        current[id] = name;
+        ids.put(name, id);
+        names = current; // Publish after the slot is filled
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    // One past the highest id, i.e. the length an id-indexed array needs
+    public int capacity() {
+        return nextId;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Count, sum, min, max and mean of transaction amounts in one category, plus
+// the largest few transactions. Stats for separate sets of transactions (e.g.
+// two months) combine with merge, which is how ReportEngine builds totals for a
+// range out of per-month partitions.
+public class CategoryStats {
+    private final String category;
+    private final int topSize;
+    private long count;
+    // In cents, see Money
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    // Largest first; only the first topCount slots are in use
+    private final Transaction[] largest;
+    private int topCount;
+
+    public CategoryStats(String category, int topSize) {
+        this.category = category;
+        this.topSize = topSize;
+        this.largest = new Transaction[topSize];
+    }
+
+    public void add(Transaction transaction) {
+        long amount = transaction.getAmountCents();
+        count++;
+        sum += amount;
+        min = Math.min(min, amount);
+        max = Math.max(max, amount);
+        offerLargest(transaction);
+    }
+
+    // Adds another set of stats for the same category into this one
+    public void merge(CategoryStats other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        for (int i = 0; i < other.topCount; i++) {
+            offerLargest(other.largest[i]);
+        }
+    }
+
+    public CategoryStats copy() {
+        CategoryStats copy = new CategoryStats(category, topSize);
+        copy.merge(this);
+        return copy;
+    }
+
+    // Insertion into a short sorted array; most transactions fall below the
+    // smallest kept one and cost a single comparison
+    private void offerLargest(Transaction transaction) {
+        if (topSize == 0) {
+            return;
+        }
+        long amount = transaction.getAmountCents();
+        if (topCount == topSize && amount <= largest[topCount - 1].getAmountCents()) {
+            return;
+        }
+        int i = topCount < topSize ? topCount++ : topCount - 1;
+        while (i > 0 && largest[i - 1].getAmountCents() < amount) {
+            largest[i] = largest[i - 1];
+            i--;
+        }
+        largest[i] = transaction;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSumCents() {
+        return sum;
+    }
+
+    // 0 when there are no transactions
+    public long getMinCents() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMaxCents() {
+        return count == 0 ? 0 : max;
+    }
+
+    public double getSum() {
+        return Money.toAmount(sum);
+    }
+
+    public double getMin() {
+        return Money.toAmount(getMinCents());
+    }
+
+    public double getMax() {
+        return Money.toAmount(getMaxCents());
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : Money.toAmount(sum) / count;
+    }
+
+    // Largest amount first
+    public List<Transaction> getLargest() {
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(largest).subList(0, topCount)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{count=%d, sum=%s, min=%s, max=%s, mean=%.2f}",
+                category, count, Money.format(sum), Money.format(getMinCents()), Money.format(getMaxCents()), getMean());
+    }
+}
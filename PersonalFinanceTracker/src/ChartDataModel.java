@@ -0,0 +1,190 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.swing.SwingUtilities;
+
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.general.DefaultPieDataset;
+
+// Shared datasets behind the chart window: budget limits for the pie chart and
+// year-to-date expenses per month and category for the bar chart. The first load
+// builds both datasets on a reader thread. After that, DataService change events
+// patch only the affected keys, and the charts repaint from the dataset events.
+// The datasets are only touched on the EDT once a chart can see them.
+public class ChartDataModel implements DataService.ChangeListener {
+    // Request to datasets updated on the EDT
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("GUI", "chartLoad");
+
+    private final DataService dataService;
+    private DefaultPieDataset<String> budgetDataset;
+    private DefaultCategoryDataset expenseDataset;
+    // First month shown in the bar chart, i.e. January of the loaded year
+    private YearMonth firstMonth;
+
+    private static final class Snapshot {
+        final YearMonth firstMonth;
+        final DefaultPieDataset<String> budgets;
+        final DefaultCategoryDataset expenses;
+
+        Snapshot(YearMonth firstMonth, DefaultPieDataset<String> budgets, DefaultCategoryDataset expenses) {
+            this.firstMonth = firstMonth;
+            this.budgets = budgets;
+            this.expenses = expenses;
+        }
+    }
+
+    public ChartDataModel(DataService dataService) {
+        this.dataService = dataService;
+        dataService.addChangeListener(this);
+    }
+
+    // Reads the datasets from the database; completes on the EDT. Calling it again
+    // later reconciles the existing datasets with the database in place.
+    public CompletableFuture<ChartDataModel> load() {
+        long start = System.nanoTime();
+        return dataService.query("chartData", this::readSnapshot)
+                .thenApplyAsync(snapshot -> {
+                    apply(snapshot);
+                    LOAD_TIMER.recordSince(start);
+                    return this;
+                }, DataService.EDT)
+                .whenComplete((model, error) -> {
+                    if (error != null) {
+                        LOAD_TIMER.recordError();
+                    }
+                });
+    }
+
+    public boolean isLoaded() {
+        return budgetDataset != null;
+    }
+
+    public DefaultPieDataset<String> getBudgetDataset() {
+        return budgetDataset;
+    }
+
+    public DefaultCategoryDataset getExpenseDataset() {
+        return expenseDataset;
+    }
+
+    // Runs on a reader thread; the new datasets have no listeners yet
+    private Snapshot readSnapshot() {
+        DatabaseHandler databaseHandler = dataService.getDatabaseHandler();
+        YearMonth now = YearMonth.now();
+        YearMonth first = YearMonth.of(now.getYear(), 1);
+
+        // Amounts arrive in cents and are charted in currency units
+        DefaultPieDataset<String> budgets = new DefaultPieDataset<>();
+        databaseHandler.getBudgetLimits().forEach((category, cents) -> budgets.setValue(category, Money.toAmount(cents)));
+
+        DefaultCategoryDataset expenses = new DefaultCategoryDataset();
+        for (Map.Entry<YearMonth, CategoryAmounts> month : databaseHandler.getMonthlyBreakdown(first, now).entrySet()) {
+            String column = month.getKey().toString();
+            month.getValue().forEach((category, cents) -> expenses.addValue(Money.toAmount(cents), category, column));
+        }
+        return new Snapshot(first, budgets, expenses);
+    }
+
+    private void apply(Snapshot snapshot) {
+        if (budgetDataset == null) {
+            // First load: adopt the datasets built off the EDT
+            budgetDataset = snapshot.budgets;
+            expenseDataset = snapshot.expenses;
+            firstMonth = snapshot.firstMonth;
+            return;
+        }
+        if (!snapshot.firstMonth.equals(firstMonth)) {
+            // A new year: open charts hold these datasets, so empty and refill them in place
+            expenseDataset.clear();
+            firstMonth = snapshot.firstMonth;
+        }
+
+        for (String category : new ArrayList<String>(budgetDataset.getKeys())) {
+            if (snapshot.budgets.getIndex(category) < 0) {
+                budgetDataset.remove(category);
+            }
+        }
+        for (String category : snapshot.budgets.getKeys()) {
+            Number limit = snapshot.budgets.getValue(category);
+            if (budgetDataset.getIndex(category) < 0 || !limit.equals(budgetDataset.getValue(category))) {
+                budgetDataset.setValue(category, limit);
+            }
+        }
+
+        List<?> columns = expenseDataset.getColumnKeys();
+        List<?> snapshotColumns = snapshot.expenses.getColumnKeys();
+        if (columns.size() > snapshotColumns.size() || !snapshotColumns.subList(0, columns.size()).equals(columns)) {
+            // Months appeared out of order; the columns can only be rebuilt in full
+            expenseDataset.clear();
+        }
+        // Drop cells the database no longer has, then set the ones that differ
+        for (Object row : expenseDataset.getRowKeys().toArray()) {
+            for (Object column : expenseDataset.getColumnKeys().toArray()) {
+                if (expenseOf(snapshot.expenses, (String) row, (String) column) == null) {
+                    expenseDataset.removeValue((String) row, (String) column);
+                }
+            }
+        }
+        for (Object row : snapshot.expenses.getRowKeys()) {
+            for (Object column : snapshot.expenses.getColumnKeys()) {
+                Number value = expenseOf(snapshot.expenses, (String) row, (String) column);
+                if (value != null && !value.equals(expenseOf(expenseDataset, (String) row, (String) column))) {
+                    expenseDataset.setValue(value, (String) row, (String) column);
+                }
+            }
+        }
+    }
+
+    // Cell value, or null if the dataset has no such row, column or value
+    private static Number expenseOf(DefaultCategoryDataset dataset, String category, String month) {
+        if (dataset.getRowIndex(category) < 0 || dataset.getColumnIndex(month) < 0) {
+            return null;
+        }
+        return dataset.getValue(category, month);
+    }
+
+    @Override
+    public void transactionAdded(long amountCents, java.util.Date date, String category) {
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(EpochDays.toEpochDay(date)));
+        SwingUtilities.invokeLater(() -> addExpense(month, category, amountCents));
+    }
+
+    @Override
+    public void budgetChanged(String category, long limitCents) {
+        SwingUtilities.invokeLater(() -> {
+            if (budgetDataset != null) {
+                budgetDataset.setValue(category, Money.toAmount(limitCents));
+            }
+        });
+    }
+
+    @Override
+    public void budgetRemoved(String category) {
+        SwingUtilities.invokeLater(() -> {
+            if (budgetDataset != null && budgetDataset.getIndex(category) >= 0) {
+                budgetDataset.remove(category);
+            }
+        });
+    }
+
+    private void addExpense(YearMonth month, String category, long amountCents) {
+        if (expenseDataset == null || month.isBefore(firstMonth) || month.isAfter(YearMonth.now())) {
+            return; // Not loaded yet (the load will include it), or outside the chart's range
+        }
+        String column = month.toString();
+        List<?> columns = expenseDataset.getColumnKeys();
+        if (expenseDataset.getColumnIndex(column) < 0 && !columns.isEmpty()
+                && column.compareTo((String) columns.get(columns.size() - 1)) < 0) {
+            load(); // A new month before the existing ones would be drawn out of order
+            return;
+        }
+        // Added in cents so repeated additions do not drift from the loaded totals
+        Number current = expenseOf(expenseDataset, category, column);
+        long cents = (current == null ? 0 : Money.toCents(current.doubleValue())) + amountCents;
+        expenseDataset.setValue(Money.toAmount(cents), category, column);
+    }
+}
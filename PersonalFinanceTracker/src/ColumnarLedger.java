@@ -0,0 +1,143 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Transactions stored column by column in growable primitive arrays. Amounts
+// (in cents), epoch days and category ids sit in contiguous memory, so balance,
+// category and date-range sums are tight loops that allocate nothing; the
+// balance is a single Money.sum. Category names live once
+// in a CategoryDictionary and rows refer to them by id. Account ids get a column
+// too, so a ledger of any account reads back unchanged.
+public class ColumnarLedger implements Ledger {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] accountIds = new int[INITIAL_CAPACITY];
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private int size;
+
+    private final CategoryDictionary categories;
+
+    public ColumnarLedger() {
+        this(new CategoryDictionary());
+    }
+
+    public ColumnarLedger(CategoryDictionary categories) {
+        this.categories = categories;
+    }
+
+    @Override
+    public void add(Transaction transaction) {
+        if (transaction.getDate() == null) {
+            throw new IllegalArgumentException("Transaction date is required");
+        }
+        if (size == amounts.length) {
+            grow();
+        }
+        ids[size] = transaction.getId();
+        amounts[size] = transaction.getAmountCents();
+        epochDays[size] = (int) EpochDays.toEpochDay(transaction.getDate());
+        categoryIds[size] = categories.idOf(transaction);
+        accountIds[size] = transaction.getAccountId();
+        descriptions[size] = transaction.getDescription();
+        size++;
+    }
+
+    @Override
+    public void replaceAll(List<Transaction> transactions) {
+        Arrays.fill(descriptions, 0, size, null);
+        size = 0;
+        addAll(transactions);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // A read-only view; Transaction objects are created only when an element is read
+    @Override
+    public List<Transaction> getTransactions() {
+        return Collections.unmodifiableList(new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                Transaction transaction = Transaction.ofCents(ids[index], amounts[index], EpochDays.toDate(epochDays[index]),
+                        descriptions[index], categories.nameOf(categoryIds[index]), categoryIds[index]);
+                transaction.setAccountId(accountIds[index]);
+                return transaction;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        });
+    }
+
+    @Override
+    public long sumAmountCents() {
+        return Money.sum(amounts, 0, size);
+    }
+
+    @Override
+    public long sumCategoryCents(String category) {
+        int id = categories.lookup(category);
+        return id < 0 ? 0 : sumCategoryCents(id);
+    }
+
+    public long sumCategoryCents(int categoryId) {
+        long[] a = amounts;
+        int[] c = categoryIds;
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (c[i] == categoryId) {
+                sum += a[i];
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long sumBetweenCents(long fromEpochDay, long toEpochDay) {
+        long[] a = amounts;
+        int[] d = epochDays;
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (d[i] >= fromEpochDay && d[i] <= toEpochDay) {
+                sum += a[i];
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        int capacity = amounts.length;
+        // Six arrays with 16 byte headers: long, long, int, int, int and String references
+        long bytes = 6 * 16 + capacity * (8L + 8 + 4 + 4 + 4 + 4);
+        for (int i = 0; i < size; i++) {
+            bytes += Ledger.estimateStringBytes(descriptions[i]);
+        }
+        for (int id = 0; id < categories.capacity(); id++) {
+            bytes += Ledger.estimateStringBytes(categories.nameOf(id)) + 48; // Plus its map entry and boxed id
+        }
+        return bytes;
+    }
+
+    private void grow() {
+        int capacity = amounts.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+    }
+}
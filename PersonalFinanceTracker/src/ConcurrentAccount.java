@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Account for importers that add transactions from several threads at once.
+// Account itself is not thread-safe. Transactions go to a SegmentedLedger, the
+// balance and category totals are LongAdders, and budgets add spending with a
+// CAS (Budget.addSpendingCents), so adding never takes a lock. Adding a budget or
+// a first transaction in a new category copies a small id-indexed array under a
+// lock. Reads taken while adds are in flight may include some of them and not
+// others; once the adds have returned, every total includes each exactly once.
+public class ConcurrentAccount {
+    private final Ledger ledger;
+    private final CategoryDictionary categories;
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    // Copied on write; slots never change once set, so readers need no lock
+    private volatile Budget[] budgetsById = new Budget[0];
+    private volatile LongAdder[] categoryTotals = new LongAdder[0];
+    private final LongAdder totalBalanceCents = new LongAdder();
+
+    public ConcurrentAccount() {
+        this(new CategoryDictionary());
+    }
+
+    public ConcurrentAccount(CategoryDictionary categories) {
+        this(new SegmentedLedger(), categories);
+    }
+
+    // The ledger must be safe for concurrent adds
+    public ConcurrentAccount(Ledger ledger, CategoryDictionary categories) {
+        this.ledger = ledger;
+        this.categories = categories;
+    }
+
+    public void addTransaction(Transaction transaction) {
+        int categoryId = categories.idOf(transaction);
+        Budget budget = budgetFor(categoryId);
+        long amountCents = transaction.getAmountCents();
+        ledger.add(transaction);
+        totalBalanceCents.add(amountCents);
+        if (categoryId >= 0) {
+            categoryTotal(categoryId).add(amountCents);
+        }
+        if (budget != null) {
+            budget.addSpendingCents(amountCents);
+        }
+    }
+
+    // Bulk variant of addTransaction: the batch is summed per category first, so the
+    // shared counters are touched once per category rather than once per transaction
+    public void addTransactions(Collection<Transaction> batch) {
+        int[] categoryIds = new int[batch.size()];
+        int index = 0;
+        for (Transaction transaction : batch) {
+            categoryIds[index++] = categories.idOf(transaction);
+        }
+        ledger.addAll(batch);
+
+        long[] spending = new long[categories.capacity()];
+        boolean[] seen = new boolean[spending.length];
+        long total = 0;
+        index = 0;
+        for (Transaction transaction : batch) {
+            int categoryId = categoryIds[index++];
+            total += transaction.getAmountCents();
+            if (categoryId >= 0) {
+                spending[categoryId] += transaction.getAmountCents();
+                seen[categoryId] = true;
+            }
+        }
+        totalBalanceCents.add(total);
+        for (int categoryId = 0; categoryId < spending.length; categoryId++) {
+            if (!seen[categoryId]) {
+                continue;
+            }
+            categoryTotal(categoryId).add(spending[categoryId]);
+            Budget budget = budgetFor(categoryId);
+            if (budget != null && spending[categoryId] != 0) {
+                budget.addSpendingCents(spending[categoryId]);
+            }
+        }
+    }
+
+    public double calculateTotalBalance() {
+        return Money.toAmount(getTotalBalanceCents());
+    }
+
+    public long getTotalBalanceCents() {
+        return totalBalanceCents.sum();
+    }
+
+    public double getCategoryTotal(String category) {
+        return Money.toAmount(getCategoryTotalCents(category));
+    }
+
+    public long getCategoryTotalCents(String category) {
+        int categoryId = categories.lookup(category);
+        LongAdder[] current = categoryTotals;
+        return categoryId >= 0 && categoryId < current.length && current[categoryId] != null
+                ? current[categoryId].sum() : 0;
+    }
+
+    // Adds this account's total for every category with transactions
+    public void addCategoryTotalsTo(CategoryAmounts totals) {
+        LongAdder[] current = categoryTotals;
+        for (int categoryId = 0; categoryId < current.length; categoryId++) {
+            if (current[categoryId] != null) {
+                totals.add(categoryId, current[categoryId].sum());
+            }
+        }
+    }
+
+    // Sum of amounts dated between from and to, inclusive
+    public double sumBetween(Date from, Date to) {
+        return Money.toAmount(sumBetweenCents(from, to));
+    }
+
+    public long sumBetweenCents(Date from, Date to) {
+        return ledger.sumBetweenCents(EpochDays.toEpochDay(from), EpochDays.toEpochDay(to));
+    }
+
+    public synchronized void addBudget(String category, double limit) {
+        Budget budget = new Budget(category, limit);
+        budgets.put(category, budget);
+        int categoryId = categories.idOf(category);
+        if (categoryId < 0) {
+            return;
+        }
+        Budget[] current = budgetsById;
+        current = Arrays.copyOf(current, Math.max(current.length, categoryId + 1));
+        current[categoryId] = budget;
+        budgetsById = current;
+    }
+
+    public void checkBudgets() {
+        for (Budget budget : budgets.values()) {
+            if (budget.isOverLimit()) {
+                System.out.println("Budget exceeded for category: " + budget.getCategory());
+            } else {
+                System.out.println("Budget for " + budget.getCategory() + " is within limit.");
+            }
+        }
+    }
+
+    public Map<String, Budget> getBudgets() {
+        return Collections.unmodifiableMap(budgets);
+    }
+
+    public List<Transaction> getTransactions() {
+        return ledger.getTransactions();
+    }
+
+    public CategoryDictionary getCategories() {
+        return categories;
+    }
+
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    private Budget budgetFor(int categoryId) {
+        Budget[] current = budgetsById;
+        return categoryId >= 0 && categoryId < current.length ? current[categoryId] : null;
+    }
+
+    private LongAdder categoryTotal(int categoryId) {
+        LongAdder[] current = categoryTotals;
+        if (categoryId < current.length && current[categoryId] != null) {
+            return current[categoryId];
+        }
+        synchronized (this) {
+            current = categoryTotals;
+            if (categoryId < current.length && current[categoryId] != null) {
+                return current[categoryId];
+            }
+            current = Arrays.copyOf(current, Math.max(current.length, Math.max(categories.capacity(), categoryId + 1)));
+            LongAdder adder = new LongAdder();
+            current[categoryId] = adder;
+            categoryTotals = current;
+            return adder;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A small pool of long-lived SQLite connections for one database file.
+// Connections run in WAL mode so readers don't block the writer, and each one
+// keeps its own cache of prepared statements (see PooledConnection). Explicit
+// transactions start with BEGIN IMMEDIATE: every one of them writes, and a
+// deferred transaction that took its snapshot before another connection's commit
+// fails with SQLITE_BUSY_SNAPSHOT instead of waiting out the busy timeout.
+// Reads run in autocommit and never take the write lock; a read-only explicit
+// transaction would, and would then queue behind the writer.
+public class ConnectionPool {
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long ACQUIRE_TIMEOUT_MS = 10_000;
+    private static final int BUSY_TIMEOUT_MS = 5_000;
+
+    // One pool per JDBC url, shared by every DatabaseHandler in the process
+    private static final Map<String, ConnectionPool> POOLS = new HashMap<>();
+
+    private final String url;
+    private final int maxSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private int created;
+    private boolean closed;
+
+    // Counters
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    // Wait time and failures per acquisition, published through Metrics
+    private final Metrics.Timer acquireTimer;
+
+    public static synchronized ConnectionPool forUrl(String url) {
+        return POOLS.computeIfAbsent(url, u -> new ConnectionPool(u, DEFAULT_POOL_SIZE));
+    }
+
+    public ConnectionPool(String url, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+        // Named after the database file
+        this.acquireTimer = Metrics.timer("ConnectionPool", url.substring(Math.max(url.lastIndexOf('/'), url.lastIndexOf(':')) + 1));
+    }
+
+    // Borrow a connection; close() on the returned object hands it back
+    public PooledConnection acquire() throws SQLException {
+        return acquire(null);
+    }
+
+    // Also times the caller's operation, from now until the connection is closed
+    public PooledConnection acquire(Metrics.Timer operation) throws SQLException {
+        long start = System.nanoTime();
+        PooledConnection conn;
+        try {
+            conn = poll();
+        } catch (SQLException e) {
+            acquireTimer.recordError();
+            throw e;
+        }
+        long waitNanos = System.nanoTime() - start;
+        recordWait(waitNanos);
+        acquireTimer.record(waitNanos);
+        conn.begin(operation, start);
+        return conn;
+    }
+
+    private PooledConnection poll() throws SQLException {
+        PooledConnection conn = idle.poll();
+        if (conn == null) {
+            conn = openIfBelowLimit();
+        }
+        if (conn == null) {
+            try {
+                conn = idle.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to " + url, e);
+            }
+            if (conn == null) {
+                throw new SQLException("Timed out waiting for a connection to " + url);
+            }
+        }
+        return conn;
+    }
+
+    void release(PooledConnection conn) {
+        boolean usable;
+        try {
+            usable = !conn.getConnection().isClosed();
+        } catch (SQLException e) {
+            usable = false;
+        }
+        synchronized (this) {
+            if (usable && !closed && idle.offer(conn)) {
+                return;
+            }
+            created--;
+        }
+        conn.closeQuietly();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.poll()) != null) {
+            conn.closeQuietly();
+            created--;
+        }
+    }
+
+    private PooledConnection openIfBelowLimit() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("Connection pool for " + url + " is closed");
+            }
+            if (created >= maxSize) {
+                return null;
+            }
+            created++;
+        }
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("transaction_mode", "IMMEDIATE");
+            Connection conn = DriverManager.getConnection(url, properties);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS);
+            }
+            return new PooledConnection(this, conn);
+        } catch (SQLException e) {
+            synchronized (this) {
+                created--;
+            }
+            throw e;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void recordStatementHit() {
+        statementHits.incrementAndGet();
+    }
+
+    void recordStatementMiss() {
+        statementMisses.incrementAndGet();
+    }
+
+    // Getters for the counters
+    public String getUrl() {
+        return url;
+    }
+
+    // Most connections open at once
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    public long getStatementHits() {
+        return statementHits.get();
+    }
+
+    public long getStatementMisses() {
+        return statementMisses.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public synchronized int getOpenConnections() {
+        return created;
+    }
+
+    @Override
+    public String toString() {
+        long count = getAcquisitions();
+        double avgWaitMicros = count == 0 ? 0 : getTotalWaitNanos() / 1000.0 / count;
+        return String.format("ConnectionPool{url='%s', open=%d, acquisitions=%d, avgWait=%.1fus, maxWait=%.1fus, statementHits=%d, statementMisses=%d}",
+                url, getOpenConnections(), count, avgWaitMicros, getMaxWaitNanos() / 1000.0, getStatementHits(), getStatementMisses());
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.concurrent.CancellationException;
+
+// Streams transactions from a database cursor straight into a CSV file in
+// amount,date,description,category order. Memory use does not grow with the row
+// count. Rows go to a ".part" file that is moved into place only when the export
+// completes, so a cancelled or failed export never leaves a truncated CSV behind.
+public class CsvExporter {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("Export", "csv");
+
+    public interface ProgressListener {
+        void onProgress(long rowsWritten, long totalRows);
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private volatile boolean cancelled;
+
+    public CsvExporter(DatabaseHandler databaseHandler) {
+        this.databaseHandler = databaseHandler;
+    }
+
+    // Safe to call from any thread; the export stops at the next row
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Returns the number of rows written. Throws CancellationException if cancel() was called.
+    // Only completed exports are timed; failures count as errors, cancels not at all.
+    public long export(Path target, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        try {
+            long rows = writeCsv(target, listener);
+            EXPORT_TIMER.recordSince(start);
+            return rows;
+        } catch (IOException e) {
+            EXPORT_TIMER.recordError();
+            throw e;
+        }
+    }
+
+    private long writeCsv(Path target, ProgressListener listener) throws IOException {
+        long totalRows = databaseHandler.countTransactions();
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        long[] written = {0};
+        IOException[] failure = {null};
+
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(partFile), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            StringBuilder line = new StringBuilder(128);
+            // Consecutive rows usually share a date, so only format it when it changes
+            long[] lastEpochDay = {Long.MIN_VALUE};
+            String[] lastDate = {null};
+
+            databaseHandler.forEachTransactionWhile(transaction -> {
+                if (cancelled) {
+                    return false;
+                }
+                long epochDay = EpochDays.toEpochDay(transaction.getDate());
+                if (epochDay != lastEpochDay[0]) {
+                    lastEpochDay[0] = epochDay;
+                    lastDate[0] = LocalDate.ofEpochDay(epochDay).toString();
+                }
+                line.setLength(0);
+                line.append(Money.format(transaction.getAmountCents())).append(',')
+                        .append(lastDate[0]).append(',');
+                appendField(line, transaction.getDescription());
+                line.append(',');
+                appendField(line, transaction.getCategory());
+                line.append('\n');
+                try {
+                    writer.append(line);
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+                written[0]++;
+                if (listener != null && written[0] % PROGRESS_INTERVAL == 0) {
+                    listener.onProgress(written[0], totalRows);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        } catch (IllegalStateException e) {
+            // The database read failed part way through
+            Files.deleteIfExists(partFile);
+            throw new IOException("Export failed after " + written[0] + " rows", e);
+        }
+
+        if (failure[0] != null || cancelled) {
+            Files.deleteIfExists(partFile);
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            throw new CancellationException("Export cancelled after " + written[0] + " rows");
+        }
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+        if (listener != null) {
+            listener.onProgress(written[0], totalRows);
+        }
+        return written[0];
+    }
+
+    // RFC 4180 quoting: wrap in quotes if the field has a comma, quote or line break
+    private static void appendField(StringBuilder line, String field) {
+        if (field == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuotes = true;
+                break;
+            }
+        }
+        if (!needsQuotes) {
+            line.append(field);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    // Headless export for scripts: java CsvExporter <output.csv>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java CsvExporter <output.csv>");
+            System.exit(2);
+        }
+        CsvExporter exporter = new CsvExporter(new DatabaseHandler());
+        long start = System.nanoTime();
+        long rows = exporter.export(Paths.get(args[0]),
+                (rowsWritten, totalRows) -> System.out.println("Exported " + rowsWritten + " of " + totalRows + " rows"));
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.println(String.format("Exported %d transactions to %s in %.2fs", rows, args[0], seconds));
+    }
+}
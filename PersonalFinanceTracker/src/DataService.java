@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+// Asynchronous facade over DatabaseHandler so the Swing EDT never waits on SQLite.
+// Reads run on a small bounded pool and identical in-flight reads share one future.
+// Writes run one at a time, in submission order, on a single writer thread.
+public class DataService {
+    private static final int READER_THREADS = 4;
+    private static final int READER_QUEUE_CAPACITY = 256;
+
+    // Runs callbacks on the event dispatch thread
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    // Notified on the writer thread after each successful write. Amounts are in cents.
+    public interface ChangeListener {
+        default void transactionAdded(long amountCents, java.util.Date date, String category) {
+        }
+
+        default void budgetChanged(String category, long limitCents) {
+        }
+
+        default void budgetRemoved(String category) {
+        }
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private final ExecutorService readers;
+    private final ExecutorService writer;
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Optional; when set, new transactions are journaled instead of committed directly
+    private final TransactionJournal journal;
+    private final BudgetTracker budgetTracker;
+    // Completes once the budget tracker has read the persisted budgets
+    private final CompletableFuture<Void> budgetsLoaded;
+
+    public DataService(DatabaseHandler databaseHandler) {
+        this(databaseHandler, null);
+    }
+
+    public DataService(DatabaseHandler databaseHandler, TransactionJournal journal) {
+        this.databaseHandler = databaseHandler;
+        this.journal = journal;
+        this.readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(READER_QUEUE_CAPACITY), daemonThreads("data-reader"));
+        this.writer = Executors.newSingleThreadExecutor(daemonThreads("data-writer"));
+        this.budgetTracker = new BudgetTracker(databaseHandler);
+        this.budgetsLoaded = write(budgetTracker::load);
+    }
+
+    public DatabaseHandler getDatabaseHandler() {
+        return databaseHandler;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Budget state is only changed on the writer thread, in step with the database
+    public BudgetTracker getBudgetTracker() {
+        return budgetTracker;
+    }
+
+    // Runs a read on the reader pool. A call with the same key while an earlier one is
+    // still running gets the earlier call's future instead of issuing a second query.
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> query(String key, Supplier<T> query) {
+        CompletableFuture<T> future = (CompletableFuture<T>) inFlight.computeIfAbsent(key, k -> supply(query, readers));
+        future.whenComplete((result, error) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    public <T> CompletableFuture<T> write(Supplier<T> update) {
+        CompletableFuture<T> future = supply(update, writer);
+        // Reads that started before this write may be stale, so don't let later calls join them
+        future.whenComplete((result, error) -> inFlight.clear());
+        return future;
+    }
+
+    public CompletableFuture<Void> write(Runnable update) {
+        return write(() -> {
+            update.run();
+            return null;
+        });
+    }
+
+    // Delivers the outcome of a future to the EDT
+    public static <T> void deliver(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenCompleteAsync((BiConsumer<T, Throwable>) (result, error) -> {
+            if (error != null) {
+                onError.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                onSuccess.accept(result);
+            }
+        }, EDT);
+    }
+
+    // Reads
+    public CompletableFuture<List<Transaction>> getAllTransactions() {
+        return query("getAllTransactions", databaseHandler::getAllTransactions);
+    }
+
+    public CompletableFuture<Integer> countTransactions() {
+        return query("countTransactions", databaseHandler::countTransactions);
+    }
+
+    public CompletableFuture<Long> getTotalSpentCents() {
+        return query("getTotalSpentCents", databaseHandler::getTotalSpentCents);
+    }
+
+    public CompletableFuture<Long> getTotalSpentCents(int accountId) {
+        return query("getTotalSpentCents:" + accountId, () -> databaseHandler.getTotalSpentCents(accountId));
+    }
+
+    public CompletableFuture<CategoryAmounts> getCategoryTotals() {
+        return query("getCategoryTotals", databaseHandler::getCategoryTotals);
+    }
+
+    public CompletableFuture<List<Budget>> getAllBudgets() {
+        return query("getAllBudgets", databaseHandler::getAllBudgets);
+    }
+
+    public CompletableFuture<List<Budget>> getBudgets(int accountId) {
+        return query("getBudgets:" + accountId, () -> databaseHandler.getBudgets(accountId));
+    }
+
+    public CompletableFuture<Boolean> accountExists(int accountId) {
+        return query("accountExists:" + accountId, () -> databaseHandler.accountExists(accountId));
+    }
+
+    public CompletableFuture<Boolean> budgetExists(String category) {
+        return query("budgetExists:" + category, () -> databaseHandler.budgetExists(category));
+    }
+
+    // Limit and spent amount of every budget, from the tracker rather than the database
+    public CompletableFuture<List<Budget>> getBudgetStatus() {
+        return budgetsLoaded.thenApply(v -> budgetTracker.getBudgets());
+    }
+
+    public CompletableFuture<List<Transaction>> getTransactions(TransactionQuery query) {
+        return query("getTransactions:" + query, () -> databaseHandler.getTransactions(query));
+    }
+
+    public CompletableFuture<List<Transaction>> searchTransactions(String text, LocalDate from, LocalDate to, Transaction after, int pageSize) {
+        String key = "searchTransactions:" + text + ":" + from + ":" + to + ":" + (after == null ? "" : after.getId()) + ":" + pageSize;
+        return query(key, () -> databaseHandler.searchTransactions(text, from, to, after, pageSize));
+    }
+
+    public CompletableFuture<Integer> countSearchResults(String text, LocalDate from, LocalDate to) {
+        return query("countSearchResults:" + text + ":" + from + ":" + to, () -> databaseHandler.countSearchResults(text, from, to));
+    }
+
+    public CompletableFuture<CategoryAmounts> getBudgetLimits() {
+        return query("getBudgetLimits", databaseHandler::getBudgetLimits);
+    }
+
+    public CompletableFuture<CategoryAmounts> getMonthlyExpenses() {
+        return query("getMonthlyExpenses", databaseHandler::getMonthlyExpenses);
+    }
+
+    public CompletableFuture<CategoryAmounts> getExpensesForMonths(YearMonth from, YearMonth to) {
+        return query("getExpensesForMonths:" + from + ":" + to, () -> databaseHandler.getExpensesForMonths(from, to));
+    }
+
+    public CompletableFuture<Map<YearMonth, CategoryAmounts>> getMonthlyBreakdown(YearMonth from, YearMonth to) {
+        return query("getMonthlyBreakdown:" + from + ":" + to, () -> databaseHandler.getMonthlyBreakdown(from, to));
+    }
+
+    // Writes
+    // With a journal this completes once the entry is durable; the row itself
+    // reaches the database on the journal's next flush
+    public CompletableFuture<Void> insertTransaction(double amount, java.util.Date date, String description, String category) {
+        return insertTransactionCents(Money.toCents(amount), date, description, category);
+    }
+
+    public CompletableFuture<Void> insertTransactionCents(long amountCents, java.util.Date date, String description, String category) {
+        return insertTransactionCents(Transaction.DEFAULT_ACCOUNT_ID, amountCents, date, description, category);
+    }
+
+    public CompletableFuture<Void> insertTransactionCents(int accountId, long amountCents, java.util.Date date,
+                                                         String description, String category) {
+        return write(() -> {
+            if (journal != null) {
+                try {
+                    journal.appendCents(accountId, amountCents, date, description, category);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (!databaseHandler.insertTransactionCents(accountId, amountCents, date, description, category)) {
+                throw new IllegalStateException("Could not insert transaction");
+            }
+            // The tracker holds the default account's budgets
+            if (accountId == Transaction.DEFAULT_ACCOUNT_ID) {
+                budgetTracker.recordSpending(category, amountCents);
+            }
+            for (ChangeListener listener : listeners) {
+                listener.transactionAdded(amountCents, date, category);
+            }
+        });
+    }
+
+    // Many transactions in one database commit. Goes straight to the database even
+    // when there is a journal: the batch is as durable as a journal entry once done.
+    public CompletableFuture<BatchInsertResult> insertTransactions(List<Transaction> batch) {
+        return write(() -> {
+            BatchInsertResult result = databaseHandler.insertTransactions(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                if (!result.isInserted(i)) {
+                    continue;
+                }
+                Transaction transaction = batch.get(i);
+                if (transaction.getAccountId() == Transaction.DEFAULT_ACCOUNT_ID) {
+                    budgetTracker.recordSpending(transaction.getCategory(), transaction.getAmountCents());
+                }
+                for (ChangeListener listener : listeners) {
+                    listener.transactionAdded(transaction.getAmountCents(), transaction.getDate(), transaction.getCategory());
+                }
+            }
+            return result;
+        });
+    }
+
+    public CompletableFuture<Boolean> insertBudget(String category, double limit) {
+        return insertBudgetCents(category, Money.toCents(limit));
+    }
+
+    public CompletableFuture<Boolean> insertBudgetCents(String category, long limitCents) {
+        return write(() -> {
+            boolean inserted = databaseHandler.insertBudgetCents(category, limitCents);
+            if (inserted) {
+                budgetTracker.addBudget(category, limitCents);
+                for (ChangeListener listener : listeners) {
+                    listener.budgetChanged(category, limitCents);
+                }
+            }
+            return inserted;
+        });
+    }
+
+    public CompletableFuture<Boolean> updateBudgetLimit(String category, double limit) {
+        return updateBudgetLimitCents(category, Money.toCents(limit));
+    }
+
+    // Completes with false, leaving the tracker and listeners alone, if no budget was updated
+    public CompletableFuture<Boolean> updateBudgetLimitCents(String category, long limitCents) {
+        return write(() -> {
+            boolean updated = databaseHandler.updateBudgetLimitCents(category, limitCents);
+            if (updated) {
+                budgetTracker.setLimit(category, limitCents);
+                for (ChangeListener listener : listeners) {
+                    listener.budgetChanged(category, limitCents);
+                }
+            }
+            return updated;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteBudget(String category) {
+        return write(() -> {
+            boolean deleted = databaseHandler.deleteBudget(category);
+            if (deleted) {
+                budgetTracker.removeBudget(category);
+                for (ChangeListener listener : listeners) {
+                    listener.budgetRemoved(category);
+                }
+            }
+            return deleted;
+        });
+    }
+
+    public void shutdown() {
+        readers.shutdown();
+        writer.shutdown();
+    }
+
+    private static <T> CompletableFuture<T> supply(Supplier<T> task, ExecutorService executor) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RuntimeException e) {
+            // Queue full or executor shut down
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,147 +1,1201 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class DatabaseHandler {
-    private Connection connectTransactions() {
-        // SQLite connection string for transactions
-        String url = "jdbc:sqlite:transactions.db"; 
-        Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(url);
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return conn;
+    // Holds transactions and, since schema version 7, budgets
+    private static final String TRANSACTIONS_URL = "jdbc:sqlite:transactions.db";
+    private static final String BUDGETS_URL = "jdbc:sqlite:budgets.db"; // Legacy budgets file, imported once
+
+    // Long-lived pool shared by every DatabaseHandler instance on the same file
+    private final ConnectionPool transactionsPool;
+    // Budgets lived in their own file before schema version 7; imported once
+    private final String legacyBudgetsUrl;
+
+    // Category ids used by transactions, totals and budgets
+    private final CategoryDictionary categories = new CategoryDictionary(this::allocateCategory);
+    // Account names and ids from the accounts table, kept the same way
+    private final CategoryDictionary accounts = new CategoryDictionary(this::allocateAccount);
+
+    private static final String INSERT_TRANSACTION_SQL = "INSERT INTO transactions(amount, date, description, category_id, account_id) VALUES(?,?,?,?,?)";
+
+    // Rows fetched per round trip when streaming
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private static final List<String> SORTABLE_COLUMNS = List.of("date", "amount", "description", "category");
+    private static final String WINDOW_FROM_SQL = " FROM transactions t JOIN categories c ON c.id = t.category_id";
+    // Filters through the full-text index; the parameter is a SearchQuery match expression
+    private static final String WINDOW_FILTER_SQL = " WHERE t.id IN (SELECT rowid FROM transactions_fts WHERE transactions_fts MATCH ?)";
+    private static final String SEARCH_SQL = "SELECT t.id, t.amount, t.date, t.description, t.category_id, t.account_id"
+            + " FROM transactions_fts f JOIN transactions t ON t.id = f.rowid"
+            + " WHERE transactions_fts MATCH ? AND t.date BETWEEN ? AND ? AND f.rowid < ?"
+            + " ORDER BY f.rowid DESC LIMIT ?";
+
+    // Rows per explicit transaction in insertTransactions
+    private int batchCommitSize = 1000;
+
+    // Latency and error counts per operation, published through Metrics. Each
+    // operation is timed from borrowing its connection until handing it back.
+    private static final Metrics.Timer INITIALIZE_DATABASE_TIMER = Metrics.timer("DatabaseHandler", "initializeDatabase");
+    private static final Metrics.Timer ALLOCATE_CATEGORY_TIMER = Metrics.timer("DatabaseHandler", "allocateCategory");
+    private static final Metrics.Timer CREATE_ACCOUNT_TIMER = Metrics.timer("DatabaseHandler", "createAccount");
+    private static final Metrics.Timer ACCOUNT_EXISTS_TIMER = Metrics.timer("DatabaseHandler", "accountExists");
+    private static final Metrics.Timer INSERT_TRANSACTION_TIMER = Metrics.timer("DatabaseHandler", "insertTransaction");
+    private static final Metrics.Timer INSERT_TRANSACTIONS_TIMER = Metrics.timer("DatabaseHandler", "insertTransactions");
+    private static final Metrics.Timer APPLY_JOURNAL_BATCH_TIMER = Metrics.timer("DatabaseHandler", "applyJournalBatch");
+    private static final Metrics.Timer GET_JOURNAL_APPLIED_SEQ_TIMER = Metrics.timer("DatabaseHandler", "getJournalAppliedSeq");
+    private static final Metrics.Timer COUNT_TRANSACTIONS_TIMER = Metrics.timer("DatabaseHandler", "countTransactions");
+    private static final Metrics.Timer FOR_EACH_TRANSACTION_WHILE_TIMER = Metrics.timer("DatabaseHandler", "forEachTransactionWhile");
+    private static final Metrics.Timer GET_TRANSACTIONS_PAGE_TIMER = Metrics.timer("DatabaseHandler", "getTransactionsPage");
+    private static final Metrics.Timer GET_TRANSACTIONS_WINDOW_TIMER = Metrics.timer("DatabaseHandler", "getTransactionsWindow");
+    private static final Metrics.Timer QUERY_TRANSACTIONS_TIMER = Metrics.timer("DatabaseHandler", "queryTransactions");
+    private static final Metrics.Timer EXPLAIN_TIMER = Metrics.timer("DatabaseHandler", "explain");
+    private static final Metrics.Timer SEARCH_TRANSACTIONS_TIMER = Metrics.timer("DatabaseHandler", "searchTransactions");
+    private static final Metrics.Timer COUNT_SEARCH_RESULTS_TIMER = Metrics.timer("DatabaseHandler", "countSearchResults");
+    private static final Metrics.Timer INSERT_BUDGET_TIMER = Metrics.timer("DatabaseHandler", "insertBudget");
+    private static final Metrics.Timer BUDGET_EXISTS_TIMER = Metrics.timer("DatabaseHandler", "budgetExists");
+    private static final Metrics.Timer UPDATE_BUDGET_LIMIT_TIMER = Metrics.timer("DatabaseHandler", "updateBudgetLimit");
+    private static final Metrics.Timer LOG_ALL_BUDGETS_TIMER = Metrics.timer("DatabaseHandler", "logAllBudgets");
+    private static final Metrics.Timer GET_TOTAL_SPENT_TIMER = Metrics.timer("DatabaseHandler", "getTotalSpent");
+    private static final Metrics.Timer GET_CATEGORY_TOTALS_TIMER = Metrics.timer("DatabaseHandler", "getCategoryTotals");
+    private static final Metrics.Timer REBUILD_TOTALS_TIMER = Metrics.timer("DatabaseHandler", "rebuildTotals");
+    private static final Metrics.Timer GET_BUDGET_LIMIT_TIMER = Metrics.timer("DatabaseHandler", "getBudgetLimit");
+    private static final Metrics.Timer DELETE_BUDGET_TIMER = Metrics.timer("DatabaseHandler", "deleteBudget");
+    private static final Metrics.Timer GET_BUDGET_LIMITS_TIMER = Metrics.timer("DatabaseHandler", "getBudgetLimits");
+    private static final Metrics.Timer GET_EXPENSES_FOR_MONTHS_TIMER = Metrics.timer("DatabaseHandler", "getExpensesForMonths");
+    private static final Metrics.Timer GET_MONTHLY_BREAKDOWN_TIMER = Metrics.timer("DatabaseHandler", "getMonthlyBreakdown");
+    private static final Metrics.Timer GET_ALL_BUDGETS_TIMER = Metrics.timer("DatabaseHandler", "getAllBudgets");
+    private static final Metrics.Timer GET_OVER_LIMIT_BUDGETS_TIMER = Metrics.timer("DatabaseHandler", "getOverLimitBudgets");
+
+    private PooledConnection connectTransactions(Metrics.Timer operation) throws SQLException {
+        // Borrow a pooled connection for transactions
+        return transactionsPool.acquire(operation);
     }
     
-    private Connection connectBudgets() {
-        // SQLite connection string for budgets
-        String url = "jdbc:sqlite:budgets.db"; // Update with your actual database path
-        Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(url);
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return conn;
+    public DatabaseHandler() {
+        this(TRANSACTIONS_URL, BUDGETS_URL);
     }
 
-    public DatabaseHandler() {
+    // For a database other than the default file, e.g. a temporary one in benchmarks
+    public DatabaseHandler(String url) {
+        this(url, null);
+    }
+
+    // legacyBudgetsUrl names a pre-version-7 budgets database to import, or null
+    public DatabaseHandler(String transactionsUrl, String legacyBudgetsUrl) {
+        this.transactionsPool = ConnectionPool.forUrl(transactionsUrl);
+        this.legacyBudgetsUrl = legacyBudgetsUrl;
         // Call the method to create tables if they don't exist
         initializeDatabase();
     }
 
+    // Versioned schema for transactions.db. Version 1 is the original layout with
+    // 'yyyy-MM-dd' text dates; version 2 rebuilds the table with integer epoch-day
+    // dates and adds indexes for date and category filters.
+    private static final SchemaMigrator TRANSACTIONS_SCHEMA = new SchemaMigrator("transactions")
+            .addVersion("CREATE TABLE IF NOT EXISTS transactions ("
+                    + "	id integer PRIMARY KEY,"
+                    + "	amount real NOT NULL,"
+                    + "	date text NOT NULL,"
+                    + "	description text,"
+                    + "	category text NOT NULL"
+                    + ");")
+            .addVersion("CREATE TABLE transactions_v2 ("
+                            + "	id integer PRIMARY KEY,"
+                            + "	amount real NOT NULL,"
+                            + "	date integer NOT NULL," // Days since 1970-01-01
+                            + "	description text,"
+                            + "	category text NOT NULL"
+                            + ");",
+                    "INSERT INTO transactions_v2(id, amount, date, description, category)"
+                            + " SELECT id, amount, CAST(julianday(date) - 2440587.5 AS INTEGER), description, category"
+                            + " FROM transactions WHERE julianday(date) IS NOT NULL;",
+                    // Keep rows whose date could never be parsed instead of silently dropping them
+                    "CREATE TABLE transactions_unparsed AS SELECT * FROM transactions WHERE julianday(date) IS NULL;",
+                    "DROP TABLE transactions;",
+                    "ALTER TABLE transactions_v2 RENAME TO transactions;",
+                    "CREATE INDEX idx_transactions_date ON transactions(date);",
+                    "CREATE INDEX idx_transactions_category_date ON transactions(category, date);")
+            // Version 3: per-category running totals, kept current by triggers so every
+            // insert path (single, batched, or external) updates them in O(1)
+            .addVersion("CREATE TABLE category_totals ("
+                            + " category text PRIMARY KEY,"
+                            + " total real NOT NULL,"
+                            + " count integer NOT NULL"
+                            + ");",
+                    "INSERT INTO category_totals(category, total, count)"
+                            + " SELECT category, TOTAL(amount), COUNT(*) FROM transactions GROUP BY category;",
+                    "CREATE TRIGGER trg_transactions_insert_totals AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO category_totals(category, total, count) VALUES (NEW.category, NEW.amount, 1)"
+                            + " ON CONFLICT(category) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_totals AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category = OLD.category;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_totals AFTER UPDATE OF amount, category ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category = OLD.category;"
+                            + " INSERT INTO category_totals(category, total, count) VALUES (NEW.category, NEW.amount, 1)"
+                            + " ON CONFLICT(category) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;")
+            // Version 4: rollup of totals per (month, category); month is yyyymm, e.g. 202311
+            .addVersion("CREATE TABLE monthly_totals ("
+                            + " month integer NOT NULL,"
+                            + " category text NOT NULL,"
+                            + " total real NOT NULL,"
+                            + " count integer NOT NULL,"
+                            + " PRIMARY KEY (month, category)"
+                            + ");",
+                    "INSERT INTO monthly_totals(month, category, total, count)"
+                            + " SELECT " + monthOf("date") + ", category, TOTAL(amount), COUNT(*)"
+                            + " FROM transactions GROUP BY 1, category;",
+                    "CREATE TRIGGER trg_transactions_insert_monthly AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO monthly_totals(month, category, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_monthly AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category = OLD.category;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_monthly AFTER UPDATE OF amount, date, category ON transactions BEGIN"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category = OLD.category;"
+                            + " INSERT INTO monthly_totals(month, category, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;")
+            // Version 5: category names move to a dictionary table; transactions and
+            // both totals tables reference categories by integer id
+            .addVersion("CREATE TABLE categories ("
+                            + " id integer PRIMARY KEY,"
+                            + " name text NOT NULL UNIQUE"
+                            + ");",
+                    "INSERT INTO categories(name) SELECT DISTINCT category FROM transactions ORDER BY category;",
+                    "CREATE TABLE transactions_v5 ("
+                            + "	id integer PRIMARY KEY,"
+                            + "	amount real NOT NULL,"
+                            + "	date integer NOT NULL,"
+                            + "	description text,"
+                            + "	category_id integer NOT NULL REFERENCES categories(id)"
+                            + ");",
+                    "INSERT INTO transactions_v5(id, amount, date, description, category_id)"
+                            + " SELECT t.id, t.amount, t.date, t.description, c.id"
+                            + " FROM transactions t JOIN categories c ON c.name = t.category;",
+                    // Also drops the version 3 and 4 triggers and the old indexes
+                    "DROP TABLE transactions;",
+                    "ALTER TABLE transactions_v5 RENAME TO transactions;",
+                    "CREATE INDEX idx_transactions_date ON transactions(date);",
+                    "CREATE INDEX idx_transactions_category_date ON transactions(category_id, date);",
+                    "DROP TABLE category_totals;",
+                    "CREATE TABLE category_totals ("
+                            + " category_id integer PRIMARY KEY,"
+                            + " total real NOT NULL,"
+                            + " count integer NOT NULL"
+                            + ");",
+                    "INSERT INTO category_totals(category_id, total, count)"
+                            + " SELECT category_id, TOTAL(amount), COUNT(*) FROM transactions GROUP BY category_id;",
+                    "DROP TABLE monthly_totals;",
+                    "CREATE TABLE monthly_totals ("
+                            + " month integer NOT NULL,"
+                            + " category_id integer NOT NULL,"
+                            + " total real NOT NULL,"
+                            + " count integer NOT NULL,"
+                            + " PRIMARY KEY (month, category_id)"
+                            + ");",
+                    "INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " SELECT " + monthOf("date") + ", category_id, TOTAL(amount), COUNT(*)"
+                            + " FROM transactions GROUP BY 1, category_id;",
+                    "CREATE TRIGGER trg_transactions_insert_totals AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO category_totals(category_id, total, count) VALUES (NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_totals AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category_id = OLD.category_id;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_totals AFTER UPDATE OF amount, date, category_id ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category_id = OLD.category_id;"
+                            + " INSERT INTO category_totals(category_id, total, count) VALUES (NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;")
+            // Version 6: sequence number of the last TransactionJournal entry applied,
+            // committed together with the rows it covers
+            .addVersion("CREATE TABLE journal_state ("
+                            + " id integer PRIMARY KEY CHECK (id = 1),"
+                            + " applied_seq integer NOT NULL"
+                            + ");",
+                    "INSERT INTO journal_state(id, applied_seq) VALUES (1, 0);")
+            // Version 7: budgets move into this database, keyed by category id, so
+            // limit vs. spent is a join instead of a second connection. spent is kept
+            // current by triggers; the partial index holds only over-limit budgets.
+            // Rows from the old budgets.db are copied by importLegacyBudgets.
+            .addVersion("CREATE TABLE budgets ("
+                            + " category_id integer PRIMARY KEY REFERENCES categories(id),"
+                            + " \"limit\" real NOT NULL,"
+                            + " spent real NOT NULL DEFAULT 0"
+                            + ");",
+                    "CREATE INDEX idx_budgets_over_limit ON budgets(category_id) WHERE spent > \"limit\";",
+                    "CREATE TRIGGER trg_transactions_insert_budgets AFTER INSERT ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent + NEW.amount WHERE category_id = NEW.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_budgets AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount WHERE category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_budgets AFTER UPDATE OF amount, category_id ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount WHERE category_id = OLD.category_id;"
+                            + " UPDATE budgets SET spent = spent + NEW.amount WHERE category_id = NEW.category_id;"
+                            + " END;")
+            // Version 8: full-text index over description and category name. It is
+            // contentless (rowid = transactions.id, text not stored twice), so rows
+            // are removed with FTS5's 'delete' command and the original values.
+            // Prefix indexes on 2 and 3 characters keep search-as-you-type fast.
+            .addVersion("CREATE VIRTUAL TABLE transactions_fts USING fts5("
+                            + " description, category,"
+                            + " content='', tokenize='unicode61 remove_diacritics 2', prefix='2 3'"
+                            + ");",
+                    "INSERT INTO transactions_fts(rowid, description, category)"
+                            + " SELECT t.id, t.description, c.name FROM transactions t JOIN categories c ON c.id = t.category_id;",
+                    "CREATE TRIGGER trg_transactions_insert_fts AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(rowid, description, category)"
+                            + " VALUES (NEW.id, NEW.description, (SELECT name FROM categories WHERE id = NEW.category_id));"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_fts AFTER DELETE ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(transactions_fts, rowid, description, category)"
+                            + " VALUES ('delete', OLD.id, OLD.description, (SELECT name FROM categories WHERE id = OLD.category_id));"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_fts AFTER UPDATE OF description, category_id ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(transactions_fts, rowid, description, category)"
+                            + " VALUES ('delete', OLD.id, OLD.description, (SELECT name FROM categories WHERE id = OLD.category_id));"
+                            + " INSERT INTO transactions_fts(rowid, description, category)"
+                            + " VALUES (NEW.id, NEW.description, (SELECT name FROM categories WHERE id = NEW.category_id));"
+                            + " END;")
+            // Version 9: amount ranges in TransactionQuery get an index too
+            .addVersion("CREATE INDEX idx_transactions_amount ON transactions(amount);")
+            // Version 10: money is stored as integer cents (see Money) in transactions,
+            // both totals tables and budgets, so SUM and the trigger arithmetic are
+            // exact. Tables are rebuilt because SQLite cannot change a column's type;
+            // dropping transactions drops its indexes and triggers, which are then
+            // recreated unchanged. The FTS index is keyed by id and stays as it is.
+            .addVersion("CREATE TABLE transactions_v10 ("
+                            + "	id integer PRIMARY KEY,"
+                            + "	amount integer NOT NULL," // Cents
+                            + "	date integer NOT NULL,"
+                            + "	description text,"
+                            + "	category_id integer NOT NULL REFERENCES categories(id)"
+                            + ");",
+                    "INSERT INTO transactions_v10(id, amount, date, description, category_id)"
+                            + " SELECT id, CAST(ROUND(amount * 100) AS INTEGER), date, description, category_id FROM transactions;",
+                    "DROP TABLE transactions;",
+                    "ALTER TABLE transactions_v10 RENAME TO transactions;",
+                    "CREATE INDEX idx_transactions_date ON transactions(date);",
+                    "CREATE INDEX idx_transactions_category_date ON transactions(category_id, date);",
+                    "CREATE INDEX idx_transactions_amount ON transactions(amount);",
+                    "DROP TABLE category_totals;",
+                    "CREATE TABLE category_totals ("
+                            + " category_id integer PRIMARY KEY,"
+                            + " total integer NOT NULL,"
+                            + " count integer NOT NULL"
+                            + ");",
+                    "INSERT INTO category_totals(category_id, total, count)"
+                            + " SELECT category_id, SUM(amount), COUNT(*) FROM transactions GROUP BY category_id;",
+                    "DROP TABLE monthly_totals;",
+                    "CREATE TABLE monthly_totals ("
+                            + " month integer NOT NULL,"
+                            + " category_id integer NOT NULL,"
+                            + " total integer NOT NULL,"
+                            + " count integer NOT NULL,"
+                            + " PRIMARY KEY (month, category_id)"
+                            + ");",
+                    "INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " SELECT " + monthOf("date") + ", category_id, SUM(amount), COUNT(*)"
+                            + " FROM transactions GROUP BY 1, category_id;",
+                    "CREATE TABLE budgets_v10 ("
+                            + " category_id integer PRIMARY KEY REFERENCES categories(id),"
+                            + " \"limit\" integer NOT NULL,"
+                            + " spent integer NOT NULL DEFAULT 0"
+                            + ");",
+                    "INSERT INTO budgets_v10(category_id, \"limit\", spent)"
+                            + " SELECT b.category_id, CAST(ROUND(b.\"limit\" * 100) AS INTEGER), COALESCE(t.total, 0)"
+                            + " FROM budgets b LEFT JOIN category_totals t ON t.category_id = b.category_id;",
+                    "DROP TABLE budgets;",
+                    "ALTER TABLE budgets_v10 RENAME TO budgets;",
+                    "CREATE INDEX idx_budgets_over_limit ON budgets(category_id) WHERE spent > \"limit\";",
+                    "CREATE TRIGGER trg_transactions_insert_totals AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO category_totals(category_id, total, count) VALUES (NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_totals AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category_id = OLD.category_id;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_totals AFTER UPDATE OF amount, date, category_id ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1 WHERE category_id = OLD.category_id;"
+                            + " INSERT INTO category_totals(category_id, total, count) VALUES (NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_insert_budgets AFTER INSERT ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent + NEW.amount WHERE category_id = NEW.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_budgets AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount WHERE category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_budgets AFTER UPDATE OF amount, category_id ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount WHERE category_id = OLD.category_id;"
+                            + " UPDATE budgets SET spent = spent + NEW.amount WHERE category_id = NEW.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_insert_fts AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(rowid, description, category)"
+                            + " VALUES (NEW.id, NEW.description, (SELECT name FROM categories WHERE id = NEW.category_id));"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_fts AFTER DELETE ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(transactions_fts, rowid, description, category)"
+                            + " VALUES ('delete', OLD.id, OLD.description, (SELECT name FROM categories WHERE id = OLD.category_id));"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_fts AFTER UPDATE OF description, category_id ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(transactions_fts, rowid, description, category)"
+                            + " VALUES ('delete', OLD.id, OLD.description, (SELECT name FROM categories WHERE id = OLD.category_id));"
+                            + " INSERT INTO transactions_fts(rowid, description, category)"
+                            + " VALUES (NEW.id, NEW.description, (SELECT name FROM categories WHERE id = NEW.category_id));"
+                            + " END;")
+            // Version 11: several accounts (checking, credit card, savings, ...). Every
+            // transaction and budget belongs to one; existing rows go to account 1.
+            // category_totals is kept per account and category, so a budget's spent
+            // amount is its own account's total and cross-account totals are sums
+            // over accounts. monthly_totals stays global; it only feeds the charts.
+            // The triggers that touch these tables are dropped first: SQLite checks
+            // every trigger when a table is renamed.
+            .addVersion("CREATE TABLE accounts ("
+                            + " id integer PRIMARY KEY,"
+                            + " name text NOT NULL UNIQUE"
+                            + ");",
+                    "INSERT INTO accounts(id, name) VALUES (1, 'Default');",
+                    "ALTER TABLE transactions ADD COLUMN account_id integer NOT NULL DEFAULT 1;",
+                    "CREATE INDEX idx_transactions_account_date ON transactions(account_id, date);",
+                    "DROP TRIGGER trg_transactions_insert_totals;",
+                    "DROP TRIGGER trg_transactions_delete_totals;",
+                    "DROP TRIGGER trg_transactions_update_totals;",
+                    "DROP TRIGGER trg_transactions_insert_budgets;",
+                    "DROP TRIGGER trg_transactions_delete_budgets;",
+                    "DROP TRIGGER trg_transactions_update_budgets;",
+                    "DROP TABLE category_totals;",
+                    "CREATE TABLE category_totals ("
+                            + " account_id integer NOT NULL,"
+                            + " category_id integer NOT NULL,"
+                            + " total integer NOT NULL,"
+                            + " count integer NOT NULL,"
+                            + " PRIMARY KEY (account_id, category_id)"
+                            + ");",
+                    "INSERT INTO category_totals(account_id, category_id, total, count)"
+                            + " SELECT account_id, category_id, SUM(amount), COUNT(*) FROM transactions GROUP BY account_id, category_id;",
+                    "CREATE TABLE budgets_v11 ("
+                            + " account_id integer NOT NULL REFERENCES accounts(id),"
+                            + " category_id integer NOT NULL REFERENCES categories(id),"
+                            + " \"limit\" integer NOT NULL,"
+                            + " spent integer NOT NULL DEFAULT 0,"
+                            + " PRIMARY KEY (account_id, category_id)"
+                            + ");",
+                    "INSERT INTO budgets_v11(account_id, category_id, \"limit\", spent)"
+                            + " SELECT 1, category_id, \"limit\", spent FROM budgets;",
+                    "DROP TABLE budgets;",
+                    "ALTER TABLE budgets_v11 RENAME TO budgets;",
+                    "CREATE INDEX idx_budgets_over_limit ON budgets(account_id, category_id) WHERE spent > \"limit\";",
+                    "CREATE TRIGGER trg_transactions_insert_totals AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO category_totals(account_id, category_id, total, count) VALUES (NEW.account_id, NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(account_id, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_totals AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE account_id = OLD.account_id AND category_id = OLD.category_id;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_totals AFTER UPDATE OF amount, date, category_id, account_id ON transactions BEGIN"
+                            + " UPDATE category_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE account_id = OLD.account_id AND category_id = OLD.category_id;"
+                            + " INSERT INTO category_totals(account_id, category_id, total, count) VALUES (NEW.account_id, NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(account_id, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " UPDATE monthly_totals SET total = total - OLD.amount, count = count - 1"
+                            + " WHERE month = " + monthOf("OLD.date") + " AND category_id = OLD.category_id;"
+                            + " INSERT INTO monthly_totals(month, category_id, total, count)"
+                            + " VALUES (" + monthOf("NEW.date") + ", NEW.category_id, NEW.amount, 1)"
+                            + " ON CONFLICT(month, category_id) DO UPDATE SET total = total + excluded.total, count = count + 1;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_insert_budgets AFTER INSERT ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent + NEW.amount"
+                            + " WHERE account_id = NEW.account_id AND category_id = NEW.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_delete_budgets AFTER DELETE ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount"
+                            + " WHERE account_id = OLD.account_id AND category_id = OLD.category_id;"
+                            + " END;",
+                    "CREATE TRIGGER trg_transactions_update_budgets AFTER UPDATE OF amount, category_id, account_id ON transactions BEGIN"
+                            + " UPDATE budgets SET spent = spent - OLD.amount"
+                            + " WHERE account_id = OLD.account_id AND category_id = OLD.category_id;"
+                            + " UPDATE budgets SET spent = spent + NEW.amount"
+                            + " WHERE account_id = NEW.account_id AND category_id = NEW.category_id;"
+                            + " END;");
+
+    // Budget spent amount recomputed from its account's category totals
+    private static final String BUDGET_SPENT_SQL = "COALESCE((SELECT total FROM category_totals t"
+            + " WHERE t.account_id = budgets.account_id AND t.category_id = budgets.category_id), 0)";
+    private static final String BUDGET_STATUS_SQL = "SELECT c.name AS category, b.\"limit\", b.spent"
+            + " FROM budgets b JOIN categories c ON c.id = b.category_id WHERE b.account_id = ?";
+    private static final String CATEGORY_ID_SQL = "(SELECT id FROM categories WHERE name = ?)";
+    // The budget methods without an account id work on the default account
+    private static final String DEFAULT_BUDGET_SQL = "account_id = " + Transaction.DEFAULT_ACCOUNT_ID
+            + " AND category_id = " + CATEGORY_ID_SQL;
+
+    // SQL expression for the yyyymm bucket of an epoch-day column
+    private static String monthOf(String epochDayColumn) {
+        return "CAST(strftime('%Y%m', " + epochDayColumn + " + 2440587.5) AS INTEGER)";
+    }
+
     private void initializeDatabase() {
-        // SQL statement for creating a new table for transactions
-        String sqlTransactions = "CREATE TABLE IF NOT EXISTS transactions ("
-                + "	id integer PRIMARY KEY,"
-                + "	amount real NOT NULL,"
-                + "	date text NOT NULL,"
-                + "	description text,"
-                + "	category text NOT NULL"
-                + ");";
-
-        // SQL statement for creating a new table for budgets
-        String sqlBudgets = "CREATE TABLE IF NOT EXISTS budgets ("
-                + " category text PRIMARY KEY,"
-                + " \"limit\" real NOT NULL"  // Note the quotes around limit
-                + ");";
-
-        try (Connection conn = this.connectTransactions();
-             Statement stmt = conn.createStatement()) {
-            // Create tables if they don't exist
-            stmt.execute(sqlTransactions);
+        // Create or upgrade tables to the latest schema version
+        try (PooledConnection conn = this.connectTransactions(INITIALIZE_DATABASE_TIMER)) {
+            int startVersion = TRANSACTIONS_SCHEMA.migrate(conn.getConnection());
+            if (startVersion < 7 && legacyBudgetsUrl != null) {
+                importLegacyBudgets(conn, legacyBudgetsUrl);
+            }
+            loadCategories(conn);
+            loadAccounts(conn);
+            if (!totalsConsistent(conn)) {
+                System.out.println("Category totals out of sync, rebuilding");
+                rebuildTotals(conn);
+            }
         } catch (SQLException e) {
+            INITIALIZE_DATABASE_TIMER.recordError();
             System.out.println(e.getMessage());
         }
+    }
+
+    // One-time copy of budgets from the separate budgets.db used before schema
+    // version 7. The old file is left in place untouched.
+    private void importLegacyBudgets(PooledConnection conn, String legacyUrl) throws SQLException {
+        Path legacyFile = Paths.get(legacyUrl.substring("jdbc:sqlite:".length()));
+        if (!Files.exists(legacyFile)) {
+            return;
+        }
+        Connection connection = conn.getConnection();
+        try (Statement stmt = connection.createStatement()) {
+            PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS legacy");
+            attach.setString(1, legacyFile.toString());
+            attach.execute();
+            attach.close();
+            try {
+                connection.setAutoCommit(false);
+                stmt.execute("INSERT OR IGNORE INTO categories(name) SELECT category FROM legacy.budgets WHERE category IS NOT NULL");
+                int imported = stmt.executeUpdate("INSERT OR IGNORE INTO budgets(account_id, category_id, \"limit\", spent)"
+                        + " SELECT 1, c.id, CAST(ROUND(b.\"limit\" * 100) AS INTEGER), COALESCE(t.total, 0) FROM legacy.budgets b"
+                        + " JOIN categories c ON c.name = b.category"
+                        + " LEFT JOIN category_totals t ON t.account_id = 1 AND t.category_id = c.id");
+                connection.commit();
+                System.out.println("Imported " + imported + " budgets from " + legacyFile);
+            } catch (SQLException e) {
+                connection.rollback();
+                System.out.println("Could not import budgets from " + legacyFile + ": " + e.getMessage());
+            } finally {
+                connection.setAutoCommit(true);
+                stmt.execute("DETACH DATABASE legacy");
+            }
+        }
+    }
 
-        try (Connection conn = this.connectBudgets();
-             Statement stmt = conn.createStatement()) {
-            // Create tables if they don't exist
-            stmt.execute(sqlBudgets);
+    // Reads the whole categories table into the dictionary
+    private void loadCategories(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name FROM categories")) {
+            while (rs.next()) {
+                categories.register(rs.getInt("id"), rs.getString("name"));
+            }
+        }
+    }
+
+    private void loadAccounts(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name FROM accounts")) {
+            while (rs.next()) {
+                accounts.register(rs.getInt("id"), rs.getString("name"));
+            }
+        }
+    }
+
+    // Id of an account in the accounts table, adding the account if it is new
+    private int allocateAccount(String name) {
+        try (PooledConnection conn = this.connectTransactions(CREATE_ACCOUNT_TIMER)) {
+            PreparedStatement insert = conn.prepare("INSERT OR IGNORE INTO accounts(name) VALUES(?)");
+            insert.setString(1, name);
+            insert.executeUpdate();
+            PreparedStatement select = conn.prepare("SELECT id FROM accounts WHERE name = ?");
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Account not found after insert: " + name);
+                }
+                return rs.getInt(1);
+            }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            CREATE_ACCOUNT_TIMER.recordError();
+            throw new IllegalStateException("Could not add account " + name, e);
+        }
+    }
+
+    // Id of the named account, creating it if needed
+    public int createAccount(String name) {
+        return accounts.idOf(name);
+    }
+
+    // Whether the accounts table has this id. Accounts added by another process
+    // since startup are looked up and remembered.
+    public boolean accountExists(int accountId) {
+        if (accounts.nameOf(accountId) != null) {
+            return true;
+        }
+        try (PooledConnection conn = this.connectTransactions(ACCOUNT_EXISTS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare("SELECT name FROM accounts WHERE id = ?");
+            pstmt.setInt(1, accountId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                accounts.register(accountId, rs.getString(1));
+                return true;
+            }
+        } catch (SQLException e) {
+            ACCOUNT_EXISTS_TIMER.recordError();
+            e.printStackTrace();
+            return false;
         }
     }
 
-    public void insertTransaction(double amount, java.util.Date date, String description, String category) {
-        String sql = "INSERT INTO transactions(amount, date, description, category) VALUES(?,?,?,?)";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    // Account name <-> id dictionary backed by the accounts table
+    public CategoryDictionary getAccounts() {
+        return accounts;
+    }
+
+    // Id of a category in the categories table, adding the category if it is new
+    private int resolveCategory(PooledConnection conn, String category) throws SQLException {
+        if (category == null) {
+            throw new SQLException("Category is required");
+        }
+        int id = categories.lookup(category);
+        if (id >= 0) {
+            return id;
+        }
+        PreparedStatement insert = conn.prepare("INSERT OR IGNORE INTO categories(name) VALUES(?)");
+        insert.setString(1, category);
+        insert.executeUpdate();
+        PreparedStatement select = conn.prepare("SELECT id FROM categories WHERE name = ?");
+        select.setString(1, category);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("Category not found after insert: " + category);
+            }
+            id = rs.getInt(1);
+        }
+        categories.register(id, category);
+        return id;
+    }
+
+    // Allocator for categories.idOf when the caller has no connection of its own
+    private int allocateCategory(String category) {
+        try (PooledConnection conn = this.connectTransactions(ALLOCATE_CATEGORY_TIMER)) {
+            return resolveCategory(conn, category);
+        } catch (SQLException e) {
+            ALLOCATE_CATEGORY_TIMER.recordError();
+            throw new IllegalStateException("Could not add category " + category, e);
+        }
+    }
+
+    // Name for a category id; ids added by another process are picked up with a reload
+    private String categoryName(PooledConnection conn, int id) throws SQLException {
+        String name = categories.nameOf(id);
+        if (name == null) {
+            loadCategories(conn);
+            name = categories.nameOf(id);
+        }
+        return name;
+    }
+
+    // A category id read from the database, made known to the dictionary first so
+    // results keyed by id can be turned back into names
+    private int knownCategory(PooledConnection conn, int id) throws SQLException {
+        categoryName(conn, id);
+        return id;
+    }
+
+    // Category name <-> id dictionary backed by the categories table
+    public CategoryDictionary getCategories() {
+        return categories;
+    }
+
+    // Returns true if the row was written
+    public boolean insertTransaction(double amount, java.util.Date date, String description, String category) {
+        return insertTransactionCents(Money.toCents(amount), date, description, category);
+    }
 
-        try (Connection conn = this.connectTransactions();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDouble(1, amount);
-            pstmt.setString(2, sdf.format(date)); // Ensure date is converted to String
-            pstmt.setString(3, description);
-            pstmt.setString(4, category);
+    public boolean insertTransactionCents(long amountCents, java.util.Date date, String description, String category) {
+        return insertTransactionCents(Transaction.DEFAULT_ACCOUNT_ID, amountCents, date, description, category);
+    }
+
+    public boolean insertTransactionCents(int accountId, long amountCents, java.util.Date date, String description, String category) {
+        try (PooledConnection conn = this.connectTransactions(INSERT_TRANSACTION_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(INSERT_TRANSACTION_SQL);
+            bindTransaction(pstmt, amountCents, date, description, resolveCategory(conn, category), accountId);
             int affectedRows = pstmt.executeUpdate();
             if (affectedRows > 0) {
-                System.out.println("Transaction inserted successfully.");
-            } else {
-                System.out.println("No rows affected.");
+                return true;
             }
+            System.out.println("No rows affected.");
         } catch (SQLException e) {
+            INSERT_TRANSACTION_TIMER.recordError();
             System.out.println("SQL Error: " + e.getMessage());
         }
+        return false;
+    }
+
+
+    // Bulk insert: rows are sent with JDBC batching and committed every batchCommitSize rows
+    public BatchInsertResult insertTransactions(Collection<Transaction> transactions) {
+        List<Transaction> rows = new ArrayList<>(transactions);
+        boolean[] outcomes = new boolean[rows.size()];
+        long start = System.nanoTime();
+
+        try (PooledConnection conn = this.connectTransactions(INSERT_TRANSACTIONS_TIMER)) {
+            Connection connection = conn.getConnection();
+            // New categories are added up front so a rolled-back batch cannot lose them
+            int[] categoryIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                String category = rows.get(i).getCategory();
+                categoryIds[i] = category == null ? -1 : resolveCategory(conn, category);
+            }
+            PreparedStatement pstmt = conn.prepare(INSERT_TRANSACTION_SQL);
+            connection.setAutoCommit(false);
+
+            for (int from = 0; from < rows.size(); from += batchCommitSize) {
+                int to = Math.min(from + batchCommitSize, rows.size());
+                try {
+                    List<Integer> batched = new ArrayList<>(to - from);
+                    for (int i = from; i < to; i++) {
+                        Transaction transaction = rows.get(i);
+                        if (transaction.getDate() == null || categoryIds[i] < 0) {
+                            continue; // Rejected, outcome stays false
+                        }
+                        bindTransaction(pstmt, transaction.getAmountCents(), transaction.getDate(),
+                                transaction.getDescription(), categoryIds[i], transaction.getAccountId());
+                        pstmt.addBatch();
+                        batched.add(i);
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    connection.commit();
+                    for (int k = 0; k < counts.length; k++) {
+                        outcomes[batched.get(k)] = counts[k] > 0 || counts[k] == Statement.SUCCESS_NO_INFO;
+                    }
+                } catch (SQLException e) {
+                    // One bad row fails the whole batch, so replay it row by row to find which
+                    System.out.println("Batch failed, retrying rows individually: " + e.getMessage());
+                    pstmt.clearBatch();
+                    connection.rollback();
+                    insertRowsIndividually(connection, pstmt, rows, categoryIds, from, to, outcomes);
+                }
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            INSERT_TRANSACTIONS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+
+        return new BatchInsertResult(outcomes, System.nanoTime() - start);
+    }
+
+    private void insertRowsIndividually(Connection connection, PreparedStatement pstmt,
+                                        List<Transaction> rows, int[] categoryIds,
+                                        int from, int to, boolean[] outcomes) throws SQLException {
+        // Outcomes are only recorded once the commit has succeeded
+        boolean[] inserted = new boolean[to - from];
+        for (int i = from; i < to; i++) {
+            Transaction transaction = rows.get(i);
+            if (transaction.getDate() == null || categoryIds[i] < 0) {
+                continue;
+            }
+            try {
+                bindTransaction(pstmt, transaction.getAmountCents(), transaction.getDate(),
+                        transaction.getDescription(), categoryIds[i], transaction.getAccountId());
+                inserted[i - from] = pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                System.out.println("SQL Error on row " + i + ": " + e.getMessage());
+            }
+        }
+        connection.commit();
+        System.arraycopy(inserted, 0, outcomes, from, inserted.length);
+    }
+
+    private void bindTransaction(PreparedStatement pstmt, long amountCents, java.util.Date date,
+                                 String description, int categoryId, int accountId) throws SQLException {
+        pstmt.setLong(1, amountCents);
+        pstmt.setLong(2, EpochDays.toEpochDay(date)); // Dates are stored as epoch days
+        pstmt.setString(3, description);
+        pstmt.setInt(4, categoryId);
+        pstmt.setInt(5, accountId);
+    }
+
+    // Inserts journaled transactions and advances the journal watermark in one
+    // database transaction, so each entry is applied exactly once. Returns false
+    // (and applies nothing) on failure.
+    public boolean applyJournalBatch(List<Transaction> rows, long lastSeq) {
+        try (PooledConnection conn = this.connectTransactions(APPLY_JOURNAL_BATCH_TIMER)) {
+            Connection connection = conn.getConnection();
+            int[] categoryIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                categoryIds[i] = resolveCategory(conn, rows.get(i).getCategory());
+            }
+            PreparedStatement insert = conn.prepare(INSERT_TRANSACTION_SQL);
+            PreparedStatement watermark = conn.prepare("UPDATE journal_state SET applied_seq = MAX(applied_seq, ?) WHERE id = 1");
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < rows.size(); i++) {
+                    Transaction transaction = rows.get(i);
+                    bindTransaction(insert, transaction.getAmountCents(), transaction.getDate(),
+                            transaction.getDescription(), categoryIds[i], transaction.getAccountId());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                watermark.setLong(1, lastSeq);
+                watermark.executeUpdate();
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                insert.clearBatch();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            APPLY_JOURNAL_BATCH_TIMER.recordError();
+            System.out.println("SQL Error applying journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Sequence number of the last journal entry in the transactions table, or -1 on error
+    public long getJournalAppliedSeq() {
+        try (PooledConnection conn = this.connectTransactions(GET_JOURNAL_APPLIED_SEQ_TIMER);
+             ResultSet rs = conn.prepare("SELECT applied_seq FROM journal_state WHERE id = 1").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            GET_JOURNAL_APPLIED_SEQ_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public int getBatchCommitSize() {
+        return batchCommitSize;
+    }
+
+    public void setBatchCommitSize(int batchCommitSize) {
+        if (batchCommitSize < 1) {
+            throw new IllegalArgumentException("Batch commit size must be at least 1");
+        }
+        this.batchCommitSize = batchCommitSize;
     }
 
 
     public List<Transaction> getAllTransactions() {
         List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT id, amount, date, description, category FROM transactions";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        forEachTransaction(transactions::add);
+        return transactions;
+    }
 
-        try (Connection conn = this.connectTransactions();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    public int countTransactions() {
+        return countTransactions(null);
+    }
 
-            while (rs.next()) {
-                double amount = rs.getDouble("amount");
-                java.util.Date date = null;
+    // Number of transactions matching the filter as a full-text search over description
+    // and category (null or empty matches all). Words match whole tokens by prefix, not
+    // substrings: "groc" finds "Groceries" but "ceries" does not (see SearchQuery).
+    public int countTransactions(String filter) {
+        String match = SearchQuery.toMatchExpression(filter);
+        // Every indexed row is a transaction, so the index alone can count matches
+        String sql = match != null ? "SELECT COUNT(*) FROM transactions_fts WHERE transactions_fts MATCH ?" : "SELECT COUNT(*) FROM transactions";
+        try (PooledConnection conn = this.connectTransactions(COUNT_TRANSACTIONS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            if (match != null) {
+                pstmt.setString(1, match);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            COUNT_TRANSACTIONS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+            return 0;
+        }
+    }
 
-                try {
-                    date = sdf.parse(rs.getString("date"));
-                } catch (ParseException e) {
-                    System.out.println("Error parsing date: " + e.getMessage());
-                    // Handle the parse exception, e.g., skip this transaction, use a default date, log error, etc.
+    // Streams every transaction in (date, id) order without materializing the table.
+    // Returns the number of rows handed to the consumer.
+    public int forEachTransaction(Consumer<Transaction> consumer) {
+        return forEachTransactionWhile(transaction -> {
+            consumer.accept(transaction);
+            return true;
+        });
+    }
+
+    // Like forEachTransaction, but stops as soon as the callback returns false.
+    // Throws IllegalStateException if the read fails part way, so a caller never
+    // mistakes a partial stream for the whole table.
+    public int forEachTransactionWhile(Predicate<Transaction> callback) {
+        String sql = "SELECT id, amount, date, description, category_id, account_id FROM transactions ORDER BY date, id";
+        int count = 0;
+
+        try (PooledConnection conn = this.connectTransactions(FOR_EACH_TRANSACTION_WHILE_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    count++;
+                    if (!callback.test(readTransaction(conn, rs))) {
+                        break;
+                    }
                 }
+            }
+        } catch (SQLException e) {
+            FOR_EACH_TRANSACTION_WHILE_TIMER.recordError();
+            throw new IllegalStateException("Could not read transactions after " + count + " rows", e);
+        }
+        return count;
+    }
+
+    // Streams the transactions matching a query in date order; stops as soon as
+    // the callback returns false. Returns the number of rows read. Like the
+    // unfiltered overload, throws IllegalStateException if the read fails part way.
+    public int forEachTransactionWhile(TransactionQuery query, Predicate<Transaction> callback) {
+        List<Object> params = new ArrayList<>();
+        String sql = compile(query, params);
+        if (sql == null) {
+            return 0;
+        }
+        int count = 0;
 
-                if (date != null) {  // Only add the transaction if the date was successfully parsed
-                    String description = rs.getString("description");
-                    String category = rs.getString("category");
-                    Transaction transaction = new Transaction(amount, date, description, category);
-                    transactions.add(transaction);
+        try (PooledConnection conn = this.connectTransactions(QUERY_TRANSACTIONS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            bind(pstmt, params);
+            pstmt.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    count++;
+                    if (!callback.test(readTransaction(conn, rs))) {
+                        break;
+                    }
                 }
             }
         } catch (SQLException e) {
-            System.out.println("SQL Error: " + e.getMessage());
+            QUERY_TRANSACTIONS_TIMER.recordError();
+            throw new IllegalStateException("Could not read transactions for " + query + " after " + count + " rows", e);
         }
+        return count;
+    }
+
+    public List<Transaction> getTransactions(TransactionQuery query) {
+        List<Transaction> transactions = new ArrayList<>();
+        forEachTransactionWhile(query, transactions::add);
         return transactions;
     }
 
+    // How SQLite would run a query, e.g. to check that it uses an index rather
+    // than a full scan. Returns null if the plan cannot be read.
+    public QueryPlan explain(TransactionQuery query) {
+        List<Object> params = new ArrayList<>();
+        String sql = compile(query, params);
+        if (sql == null) {
+            return new QueryPlan("(no matching categories)", new ArrayList<>());
+        }
+        try (PooledConnection conn = this.connectTransactions(EXPLAIN_TIMER)) {
+            // Not cached: the plan is read once and the statement thrown away
+            try (PreparedStatement pstmt = conn.getConnection().prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+                bind(pstmt, params);
+                List<String> steps = new ArrayList<>();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        steps.add(rs.getString("detail"));
+                    }
+                }
+                return new QueryPlan(sql, steps);
+            }
+        } catch (SQLException e) {
+            EXPLAIN_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+            return null;
+        }
+    }
 
+    // SQL for a TransactionQuery, with its parameters added to params. Each bound
+    // is a range on an indexed column. Returns null if the query can match nothing
+    // (it only names categories that do not exist).
+    private String compile(TransactionQuery query, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (query.getAccountId() >= 0) {
+            conditions.add("t.account_id = ?");
+            params.add(query.getAccountId());
+        }
+        if (!query.getCategories().isEmpty()) {
+            StringBuilder in = new StringBuilder("t.category_id IN (");
+            int known = 0;
+            for (String category : query.getCategories()) {
+                int id = categories.lookup(category);
+                if (id >= 0) {
+                    in.append(known++ == 0 ? "?" : ", ?");
+                    params.add(id);
+                }
+            }
+            if (known == 0) {
+                return null;
+            }
+            conditions.add(in.append(")").toString());
+        }
+        if (query.getFrom() != null || query.getTo() != null) {
+            addRange(conditions, params, "t.date",
+                    query.getFrom() == null ? Long.MIN_VALUE : query.getFrom().toEpochDay(),
+                    query.getTo() == null ? Long.MAX_VALUE : query.getTo().toEpochDay());
+        }
+        if (query.getMinAmountCents() != null || query.getMaxAmountCents() != null) {
+            addRange(conditions, params, "t.amount",
+                    query.getMinAmountCents() == null ? Long.MIN_VALUE : query.getMinAmountCents(),
+                    query.getMaxAmountCents() == null ? Long.MAX_VALUE : query.getMaxAmountCents());
+        }
 
+        StringBuilder sql = new StringBuilder("SELECT t.id, t.amount, t.date, t.description, t.category_id, t.account_id FROM transactions t");
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY t.date, t.id");
+        if (query.getLimit() >= 0) {
+            sql.append(" LIMIT ?");
+            params.add(query.getLimit());
+        }
+        return sql.toString();
+    }
+
+    // Open ends are bound as the type's extreme rather than left out: without
+    // table statistics SQLite rates a one-sided range as barely selective and
+    // would rather walk the date index in ORDER BY order than use the range
+    private static void addRange(List<String> conditions, List<Object> params, String column, long min, long max) {
+        conditions.add(column + " BETWEEN ? AND ?");
+        params.add(min);
+        params.add(max);
+    }
+
+    private static void bind(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object param = params.get(i);
+            if (param instanceof Long) {
+                pstmt.setLong(i + 1, (Long) param);
+            } else {
+                pstmt.setObject(i + 1, param);
+            }
+        }
+    }
+
+    // Keyset pagination over (date, id). Pass null for the first page, then the last
+    // transaction of the previous page to fetch the next one.
+    public List<Transaction> getTransactionsPage(Transaction after, int pageSize) {
+        return getTransactionsPage(after, 0, pageSize);
+    }
+
+    // As above, but skips the first skip rows after the seek. Lets a caller that only
+    // has an earlier page's last row step forward without an OFFSET from the start.
+    public List<Transaction> getTransactionsPage(Transaction after, int skip, int pageSize) {
+        List<Transaction> page = new ArrayList<>();
+        String sql = after == null
+                ? "SELECT id, amount, date, description, category_id, account_id FROM transactions ORDER BY date, id LIMIT ? OFFSET ?"
+                : "SELECT id, amount, date, description, category_id, account_id FROM transactions "
+                        + "WHERE (date, id) > (?, ?) ORDER BY date, id LIMIT ? OFFSET ?";
+
+        try (PooledConnection conn = this.connectTransactions(GET_TRANSACTIONS_PAGE_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int index = 1;
+            if (after != null) {
+                pstmt.setLong(index++, EpochDays.toEpochDay(after.getDate()));
+                pstmt.setLong(index++, after.getId());
+            }
+            pstmt.setInt(index++, pageSize);
+            pstmt.setInt(index, skip);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readTransaction(conn, rs));
+                }
+            }
+        } catch (SQLException e) {
+            GET_TRANSACTIONS_PAGE_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+        return page;
+    }
+
+    // A window of rows for the transaction table, sorted and filtered in SQL.
+    // sortColumn is one of date, amount, description or category; id breaks ties.
+    public List<Transaction> getTransactionsWindow(String sortColumn, boolean ascending, String filter, int offset, int limit) {
+        if (!SORTABLE_COLUMNS.contains(sortColumn)) {
+            throw new IllegalArgumentException("Cannot sort transactions by " + sortColumn);
+        }
+        String match = SearchQuery.toMatchExpression(filter);
+        String direction = ascending ? " ASC" : " DESC";
+        // Category sorts by name, not by id
+        String orderBy = sortColumn.equals("category") ? "c.name" : "t." + sortColumn;
+        String sql = "SELECT t.id, t.amount, t.date, t.description, t.category_id, t.account_id" + WINDOW_FROM_SQL
+                + (match != null ? WINDOW_FILTER_SQL : "")
+                + " ORDER BY " + orderBy + direction + ", t.id" + direction
+                + " LIMIT ? OFFSET ?";
+        List<Transaction> window = new ArrayList<>();
+
+        try (PooledConnection conn = this.connectTransactions(GET_TRANSACTIONS_WINDOW_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int index = 1;
+            if (match != null) {
+                pstmt.setString(index++, match);
+            }
+            pstmt.setInt(index++, limit);
+            pstmt.setInt(index, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    window.add(readTransaction(conn, rs));
+                }
+            }
+        } catch (SQLException e) {
+            GET_TRANSACTIONS_WINDOW_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+        return window;
+    }
+
+    // Full-text search over description and category, most recently recorded
+    // first. Words match as prefixes and "quoted text" as a phrase (see SearchQuery).
+    // from and to are inclusive and may be null. Pass the last row of the previous
+    // page as after to get the next page, or null for the first. The index streams
+    // matches in id order, so a page costs about the same however many rows match.
+    public List<Transaction> searchTransactions(String text, LocalDate from, LocalDate to, Transaction after, int pageSize) {
+        List<Transaction> page = new ArrayList<>();
+        String match = SearchQuery.toMatchExpression(text);
+        if (match == null) {
+            return page;
+        }
+        try (PooledConnection conn = this.connectTransactions(SEARCH_TRANSACTIONS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(SEARCH_SQL);
+            pstmt.setString(1, match);
+            pstmt.setLong(2, from == null ? Long.MIN_VALUE : from.toEpochDay());
+            pstmt.setLong(3, to == null ? Long.MAX_VALUE : to.toEpochDay());
+            pstmt.setLong(4, after == null ? Long.MAX_VALUE : after.getId());
+            pstmt.setInt(5, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readTransaction(conn, rs));
+                }
+            }
+        } catch (SQLException e) {
+            SEARCH_TRANSACTIONS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+        return page;
+    }
+
+    public int countSearchResults(String text, LocalDate from, LocalDate to) {
+        String match = SearchQuery.toMatchExpression(text);
+        if (match == null) {
+            return 0;
+        }
+        boolean ranged = from != null || to != null;
+        String sql = ranged
+                ? "SELECT COUNT(*) FROM transactions_fts f JOIN transactions t ON t.id = f.rowid"
+                        + " WHERE transactions_fts MATCH ? AND t.date BETWEEN ? AND ?"
+                : "SELECT COUNT(*) FROM transactions_fts WHERE transactions_fts MATCH ?";
+        try (PooledConnection conn = this.connectTransactions(COUNT_SEARCH_RESULTS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, match);
+            if (ranged) {
+                pstmt.setLong(2, from == null ? Long.MIN_VALUE : from.toEpochDay());
+                pstmt.setLong(3, to == null ? Long.MAX_VALUE : to.toEpochDay());
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            COUNT_SEARCH_RESULTS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private Transaction readTransaction(PooledConnection conn, ResultSet rs) throws SQLException {
+        // Epoch-day dates convert directly, no per-row string parsing, and the
+        // category name is the dictionary's shared instance
+        int categoryId = rs.getInt("category_id");
+        Transaction transaction = Transaction.ofCents(rs.getLong("id"), rs.getLong("amount"), EpochDays.toDate(rs.getLong("date")),
+                rs.getString("description"), categoryName(conn, categoryId), categoryId);
+        transaction.setAccountId(rs.getInt("account_id"));
+        return transaction;
+    }
 
     public boolean insertBudget(String category, double limit) {
-        String sql = "INSERT INTO budgets(category, \"limit\") VALUES(?, ?)";
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, category);
-            pstmt.setDouble(2, limit);
+        return insertBudgetCents(category, Money.toCents(limit));
+    }
+
+    public boolean insertBudgetCents(String category, long limitCents) {
+        return insertBudgetCents(Transaction.DEFAULT_ACCOUNT_ID, category, limitCents);
+    }
+
+    public boolean insertBudgetCents(int accountId, String category, long limitCents) {
+        // Starts out with everything the account has already spent in the category
+        String sql = "INSERT INTO budgets(account_id, category_id, \"limit\", spent)"
+                + " VALUES(?, ?, ?, COALESCE((SELECT total FROM category_totals WHERE account_id = ? AND category_id = ?), 0))";
+        try (PooledConnection conn = this.connectTransactions(INSERT_BUDGET_TIMER)) {
+            int categoryId = resolveCategory(conn, category);
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, accountId);
+            pstmt.setInt(2, categoryId);
+            pstmt.setLong(3, limitCents);
+            pstmt.setInt(4, accountId);
+            pstmt.setInt(5, categoryId);
             int affectedRows = pstmt.executeUpdate();
             return affectedRows > 0;
         } catch (SQLException e) {
+            INSERT_BUDGET_TIMER.recordError();
             e.printStackTrace();
             return false;
         }
@@ -149,131 +1203,243 @@ public class DatabaseHandler {
 
 
     public boolean budgetExists(String category) {
-        String sql = "SELECT category FROM budgets WHERE category = ?";
+        String sql = "SELECT 1 FROM budgets WHERE " + DEFAULT_BUDGET_SQL;
 
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PooledConnection conn = this.connectTransactions(BUDGET_EXISTS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setString(1, category);
             try (ResultSet rs = pstmt.executeQuery()) {
                 return rs.next(); // If a result is returned, the category exists
             }
         } catch (SQLException e) {
+            BUDGET_EXISTS_TIMER.recordError();
             e.printStackTrace(); // Handle this error properly
             return false;
         }
     }
 
-    public void updateBudgetLimit(String category, double limit) {
-        String sql = "UPDATE budgets SET \"limit\" = ? WHERE category = ?";
+    public boolean updateBudgetLimit(String category, double limit) {
+        return updateBudgetLimitCents(category, Money.toCents(limit));
+    }
+
+    // Returns false if there is no budget for the category or the update failed
+    public boolean updateBudgetLimitCents(String category, long limitCents) {
+        String sql = "UPDATE budgets SET \"limit\" = ? WHERE " + DEFAULT_BUDGET_SQL;
 
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDouble(1, limit);
+        try (PooledConnection conn = this.connectTransactions(UPDATE_BUDGET_LIMIT_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setLong(1, limitCents);
             pstmt.setString(2, category);
-            pstmt.executeUpdate();
+            return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
+            UPDATE_BUDGET_LIMIT_TIMER.recordError();
             e.printStackTrace(); // Handle this error properly
+            return false;
         }
     }
     
     // Method to log all budgets
     public void logAllBudgets() {
-        String sql = "SELECT category, \"limit\" FROM budgets";
+        String sql = "SELECT c.name AS category, b.\"limit\" FROM budgets b JOIN categories c ON c.id = b.category_id";
 
-        try (Connection conn = this.connectBudgets();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (PooledConnection conn = this.connectTransactions(LOG_ALL_BUDGETS_TIMER);
+             ResultSet rs = conn.prepare(sql).executeQuery()) {
 
             while (rs.next()) {
                 String category = rs.getString("category");
-                double limit = rs.getDouble("limit");
-                System.out.println("Category: " + category + ", Limit: " + limit);
+                long limit = rs.getLong("limit");
+                System.out.println("Category: " + category + ", Limit: " + Money.format(limit));
             }
         } catch (SQLException e) {
+            LOG_ALL_BUDGETS_TIMER.recordError();
             e.printStackTrace(); // Handle this error properly
         }
     }
     
+    // Total of all transaction amounts, read from the materialized per-category totals
+    public double getTotalSpent() {
+        return Money.toAmount(getTotalSpentCents());
+    }
+
+    public long getTotalSpentCents() {
+        return getTotalSpentCents(-1);
+    }
+
+    // One account's total, or every account's for -1
+    public long getTotalSpentCents(int accountId) {
+        String sql = "SELECT COALESCE(SUM(total), 0) FROM category_totals WHERE ? < 0 OR account_id = ?";
+        try (PooledConnection conn = this.connectTransactions(GET_TOTAL_SPENT_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, accountId);
+            pstmt.setInt(2, accountId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            GET_TOTAL_SPENT_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Total in cents per category, merged across accounts
+    public CategoryAmounts getCategoryTotals() {
+        return getCategoryTotals(-1);
+    }
+
+    // One account's totals, or every account's merged for -1
+    public CategoryAmounts getCategoryTotals(int accountId) {
+        CategoryAmounts totals = new CategoryAmounts(categories);
+        String sql = "SELECT category_id, SUM(total) AS total FROM category_totals"
+                + " WHERE ? < 0 OR account_id = ? GROUP BY category_id HAVING SUM(count) > 0";
+        try (PooledConnection conn = this.connectTransactions(GET_CATEGORY_TOTALS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, accountId);
+            pstmt.setInt(2, accountId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    totals.put(knownCategory(conn, rs.getInt("category_id")), rs.getLong("total"));
+                }
+            }
+        } catch (SQLException e) {
+            GET_CATEGORY_TOTALS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+        return totals;
+    }
+
+    // Cheap consistency check: the row counts behind the totals must match the table,
+    // and each budget's spent amount its category total
+    private boolean totalsConsistent(PooledConnection conn) throws SQLException {
+        String sql = "SELECT (SELECT COUNT(*) FROM transactions) = (SELECT TOTAL(count) FROM category_totals)"
+                + " AND (SELECT COUNT(*) FROM transactions) = (SELECT TOTAL(count) FROM monthly_totals)"
+                + " AND NOT EXISTS (SELECT 1 FROM budgets WHERE spent <> " + BUDGET_SPENT_SQL + ")";
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    // Recompute the materialized totals and budget spent amounts from the transactions table
+    public void rebuildTotals() {
+        try (PooledConnection conn = this.connectTransactions(REBUILD_TOTALS_TIMER)) {
+            rebuildTotals(conn);
+        } catch (SQLException e) {
+            REBUILD_TOTALS_TIMER.recordError();
+            System.out.println("SQL Error: " + e.getMessage());
+        }
+    }
+
+    private void rebuildTotals(PooledConnection conn) throws SQLException {
+        Connection connection = conn.getConnection();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM category_totals");
+            stmt.execute("INSERT INTO category_totals(account_id, category_id, total, count)"
+                    + " SELECT account_id, category_id, SUM(amount), COUNT(*) FROM transactions GROUP BY account_id, category_id");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("INSERT INTO monthly_totals(month, category_id, total, count)"
+                    + " SELECT " + monthOf("date") + ", category_id, SUM(amount), COUNT(*) FROM transactions GROUP BY 1, category_id");
+            stmt.execute("UPDATE budgets SET spent = " + BUDGET_SPENT_SQL);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // Method to log connection pool and statement cache counters
+    public void logPoolStats() {
+        System.out.println(transactionsPool);
+    }
+
+    public ConnectionPool getTransactionsPool() {
+        return transactionsPool;
+    }
+
     public double getBudgetLimit(String category) {
-        String sql = "SELECT \"limit\" FROM budgets WHERE category = ?";
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        String sql = "SELECT \"limit\" FROM budgets WHERE " + DEFAULT_BUDGET_SQL;
+        try (PooledConnection conn = this.connectTransactions(GET_BUDGET_LIMIT_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setString(1, category);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("limit");
+                    return Money.toAmount(rs.getLong("limit"));
                 }
             }
         } catch (SQLException e) {
+            GET_BUDGET_LIMIT_TIMER.recordError();
             e.printStackTrace(); // Handle this error properly
         }
         return Double.NaN; // Return NaN if budget is not found or on error
     }
     
     public boolean deleteBudget(String category) {
-        String sql = "DELETE FROM budgets WHERE category = ?";
+        String sql = "DELETE FROM budgets WHERE " + DEFAULT_BUDGET_SQL;
 
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PooledConnection conn = this.connectTransactions(DELETE_BUDGET_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setString(1, category);
             int affectedRows = pstmt.executeUpdate();
             return affectedRows > 0;
         } catch (SQLException e) {
+            DELETE_BUDGET_TIMER.recordError();
             System.out.println(e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
 
-    public void updateBudgetSpent(String category, double spent) {
-        String sql = "UPDATE budgets SET spent = ? WHERE category = ?";
+    // Limit and spent amount of every budget of the default account in one join
+    public List<Budget> getAllBudgets() {
+        return getBudgets(Transaction.DEFAULT_ACCOUNT_ID);
+    }
 
-        try (Connection conn = this.connectBudgets();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDouble(1, spent);
-            pstmt.setString(2, category);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
+    public List<Budget> getBudgets(int accountId) {
+        return readBudgets(GET_ALL_BUDGETS_TIMER, BUDGET_STATUS_SQL, accountId);
     }
-    
-    public List<Budget> getAllBudgets() {
-        List<Budget> budgets = new ArrayList<>();
-        String sql = "SELECT category, \"limit\" FROM budgets";
 
-        try (Connection conn = this.connectBudgets();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    // Budgets whose spending is over the limit, read from the partial index
+    public List<Budget> getOverLimitBudgets() {
+        return readBudgets(GET_OVER_LIMIT_BUDGETS_TIMER, BUDGET_STATUS_SQL + " AND b.spent > b.\"limit\"",
+                Transaction.DEFAULT_ACCOUNT_ID);
+    }
 
-            while (rs.next()) {
-                System.out.println("Fetched budget: " + rs.getString("category") + ", limit: " + rs.getDouble("limit")); // Debugging line
-                Budget budget = new Budget(rs.getString("category"), rs.getDouble("limit"));
-                budgets.add(budget);
+    private List<Budget> readBudgets(Metrics.Timer timer, String sql, int accountId) {
+        List<Budget> budgets = new ArrayList<>();
+
+        try (PooledConnection conn = this.connectTransactions(timer)) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, accountId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    budgets.add(Budget.ofCents(rs.getString("category"), rs.getLong("limit"), rs.getLong("spent")));
+                }
             }
         } catch (SQLException e) {
+            timer.recordError();
             System.out.println("Error fetching budgets: " + e.getMessage()); // Error logging
             e.printStackTrace();
         }
         return budgets;
     }
 
-    public Map<String, Double> getBudgetLimits() {
-        Map<String, Double> budgetLimits = new HashMap<>();
+    // Limit in cents per budgeted category
+    public CategoryAmounts getBudgetLimits() {
+        CategoryAmounts budgetLimits = new CategoryAmounts(categories);
         // Use double quotes for "limit" if it is a reserved keyword in your SQL dialect
-        String query = "SELECT category, \"limit\" FROM budgets"; 
+        String query = "SELECT category_id, \"limit\" FROM budgets WHERE account_id = " + Transaction.DEFAULT_ACCOUNT_ID;
 
-        try (Connection conn = this.connectBudgets(); // Validate this method's implementation
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (PooledConnection conn = this.connectTransactions(GET_BUDGET_LIMITS_TIMER);
+             ResultSet rs = conn.prepare(query).executeQuery()) {
 
             while (rs.next()) {
-                String category = rs.getString("category");
-                double limit = rs.getDouble("limit"); // Ensure this matches the column type
-                budgetLimits.put(category, limit);
+                budgetLimits.put(knownCategory(conn, rs.getInt("category_id")), rs.getLong("limit"));
             }
 
         } catch (SQLException e) {
+            GET_BUDGET_LIMITS_TIMER.recordError();
             e.printStackTrace(); // This will print the whole stack trace
         }
 
@@ -282,30 +1448,67 @@ public class DatabaseHandler {
 
 
 
-public Map<String, Double> getMonthlyExpenses() {
-    Map<String, Double> monthlyExpenses = new HashMap<>();
+    // Expenses in cents per category for the current calendar month
+    public CategoryAmounts getMonthlyExpenses() {
+        return getMonthExpenses(YearMonth.now());
+    }
+
+    public CategoryAmounts getMonthExpenses(YearMonth month) {
+        return getExpensesForMonths(month, month);
+    }
 
-    // Database query to get monthly expenses
-    String query = "SELECT category, SUM(amount) as total FROM transactions GROUP BY category"; // Replace 'transactions' with your actual table name
+    public CategoryAmounts getYearToDateExpenses() {
+        YearMonth now = YearMonth.now();
+        return getExpensesForMonths(YearMonth.of(now.getYear(), 1), now);
+    }
 
-    try (Connection conn = this.connectTransactions(); // Use your database connection method
-         Statement stmt = conn.createStatement();
-         ResultSet rs = stmt.executeQuery(query)) {
+    // Expenses per category summed over an inclusive range of months, read from the rollup
+    public CategoryAmounts getExpensesForMonths(YearMonth from, YearMonth to) {
+        CategoryAmounts expenses = new CategoryAmounts(categories);
+        String query = "SELECT category_id, SUM(total) AS total FROM monthly_totals"
+                + " WHERE month BETWEEN ? AND ? GROUP BY category_id HAVING SUM(count) > 0";
 
-        while (rs.next()) {
-            String category = rs.getString("category");
-            double total = rs.getDouble("total");
-            monthlyExpenses.put(category, total);
+        try (PooledConnection conn = this.connectTransactions(GET_EXPENSES_FOR_MONTHS_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(query);
+            pstmt.setInt(1, monthKey(from));
+            pstmt.setInt(2, monthKey(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    expenses.put(knownCategory(conn, rs.getInt("category_id")), rs.getLong("total"));
+                }
+            }
+        } catch (SQLException e) {
+            GET_EXPENSES_FOR_MONTHS_TIMER.recordError();
+            System.out.println(e.getMessage());
         }
-
-    } catch (SQLException e) {
-        System.out.println(e.getMessage());
+        return expenses;
     }
 
-    return monthlyExpenses;
-}
-
+    // Expenses per category for each month in an inclusive range, in month order
+    public Map<YearMonth, CategoryAmounts> getMonthlyBreakdown(YearMonth from, YearMonth to) {
+        Map<YearMonth, CategoryAmounts> breakdown = new TreeMap<>();
+        String query = "SELECT month, category_id, total FROM monthly_totals"
+                + " WHERE month BETWEEN ? AND ? AND count > 0 ORDER BY month";
 
+        try (PooledConnection conn = this.connectTransactions(GET_MONTHLY_BREAKDOWN_TIMER)) {
+            PreparedStatement pstmt = conn.prepare(query);
+            pstmt.setInt(1, monthKey(from));
+            pstmt.setInt(2, monthKey(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int month = rs.getInt("month");
+                    breakdown.computeIfAbsent(YearMonth.of(month / 100, month % 100), m -> new CategoryAmounts(categories))
+                            .put(knownCategory(conn, rs.getInt("category_id")), rs.getLong("total"));
+                }
+            }
+        } catch (SQLException e) {
+            GET_MONTHLY_BREAKDOWN_TIMER.recordError();
+            System.out.println(e.getMessage());
+        }
+        return breakdown;
+    }
 
-   
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
 }
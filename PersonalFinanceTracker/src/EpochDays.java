@@ -0,0 +1,19 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+// Conversions between java.util.Date and the epoch-day integers stored in the date column
+public final class EpochDays {
+    private EpochDays() {
+    }
+
+    public static long toEpochDay(Date date) {
+        // getTime() instead of toInstant(), which java.sql.Date does not support
+        return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    public static Date toDate(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// Headless mode: a local HTTP server over DataService, for importers and scripts
+// that push transactions without the GUI. Listens on the loopback address only.
+//
+//   POST /transactions[?account=ID]   CSV body, amount,date,description,category per
+//                                     line (CsvExporter's format; a header line is
+//                                     skipped). One line is a journaled insert, more
+//                                     are one batch commit.
+//   GET  /balance[?account=ID]        total in cents, every account if none given
+//   GET  /budgets[?account=ID]        limit and spent of each budget, default account
+//   GET  /rollups[?from=YYYY-MM&to=YYYY-MM]  per-month category totals, last 12 months by default
+//   GET  /metrics                     latency timers, with each one's requests per second
+//
+// A journaled insert shows up in /balance and /rollups after the journal's next
+// flush (about 50 ms); default-account budgets come from the BudgetTracker and
+// include it at once. An account that does not exist is a 404, a body over 8 MB
+// or 10,000 rows is a 413, and an insert that fails is a 500. Responses are JSON
+// except /metrics. Every endpoint has a Metrics timer, so latencies are also
+// visible through JMX. Requests run on a bounded pool of platform threads; when
+// it is saturated the accepting thread runs the request itself, which slows down
+// accepting instead of queueing without bound.
+//
+//   java -cp "out:lib/*" FinanceServer [port]      (default 8080)
+public class FinanceServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_THREADS = 16;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    // Room for MAX_BATCH_SIZE rows with long descriptions
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    private static final int ROLLUP_MONTHS = 12;
+
+    private static final Metrics.Timer POST_TRANSACTIONS_TIMER = Metrics.timer("Server", "POST /transactions");
+    private static final Metrics.Timer GET_BALANCE_TIMER = Metrics.timer("Server", "GET /balance");
+    private static final Metrics.Timer GET_BUDGETS_TIMER = Metrics.timer("Server", "GET /budgets");
+    private static final Metrics.Timer GET_ROLLUPS_TIMER = Metrics.timer("Server", "GET /rollups");
+
+    private final DataService dataService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long startNanos = System.nanoTime();
+
+    // Thrown by handlers for a 4xx response
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Handler {
+        String handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Port 0 picks a free port; see getPort
+    public FinanceServer(DataService dataService, int port, int threads) throws IOException {
+        this.dataService = dataService;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> new Thread(runnable, "http-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        server.setExecutor(executor);
+        server.createContext("/transactions", route("POST", POST_TRANSACTIONS_TIMER, this::postTransactions));
+        server.createContext("/balance", route("GET", GET_BALANCE_TIMER, this::getBalance));
+        server.createContext("/budgets", route("GET", GET_BUDGETS_TIMER, this::getBudgets));
+        server.createContext("/rollups", route("GET", GET_ROLLUPS_TIMER, this::getRollups));
+        server.createContext("/metrics", this::getMetrics);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + getPort());
+    }
+
+    // Waits up to delaySeconds for requests in progress
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private String postTransactions(HttpExchange exchange) throws IOException {
+        int accountId = accountParameter(exchange, Transaction.DEFAULT_ACCOUNT_ID);
+        List<Transaction> batch = new ArrayList<>();
+        for (List<String> row : parseCsv(readBody(exchange))) {
+            if (batch.isEmpty() && !row.isEmpty() && row.get(0).equalsIgnoreCase("amount")) {
+                continue; // Header
+            }
+            if (row.size() == 1 && row.get(0).isEmpty()) {
+                continue; // Blank line
+            }
+            batch.add(parseTransaction(row, accountId, batch.size() + 1));
+            if (batch.size() > MAX_BATCH_SIZE) {
+                throw new RequestException(413, "At most " + MAX_BATCH_SIZE + " transactions per request");
+            }
+        }
+        if (batch.isEmpty()) {
+            throw new RequestException(400, "No transactions in the request body");
+        }
+        if (batch.size() == 1) {
+            Transaction transaction = batch.get(0);
+            await(dataService.insertTransactionCents(accountId, transaction.getAmountCents(), transaction.getDate(),
+                    transaction.getDescription(), transaction.getCategory()));
+            return "{\"inserted\":1,\"failed\":0}";
+        }
+        BatchInsertResult result = await(dataService.insertTransactions(batch));
+        return "{\"inserted\":" + result.getInsertedCount() + ",\"failed\":" + result.getFailedCount() + "}";
+    }
+
+    private String getBalance(HttpExchange exchange) {
+        int accountId = accountParameter(exchange, -1);
+        long cents = await(dataService.getTotalSpentCents(accountId));
+        return "{" + (accountId >= 0 ? "\"account\":" + accountId + "," : "")
+                + "\"cents\":" + cents + ",\"balance\":\"" + Money.format(cents) + "\"}";
+    }
+
+    private String getBudgets(HttpExchange exchange) {
+        int accountId = accountParameter(exchange, Transaction.DEFAULT_ACCOUNT_ID);
+        List<Budget> budgets = await(accountId == Transaction.DEFAULT_ACCOUNT_ID
+                ? dataService.getBudgetStatus() : dataService.getBudgets(accountId));
+        StringBuilder json = new StringBuilder("[");
+        for (Budget budget : budgets) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"category\":").append(quote(budget.getCategory()))
+                    .append(",\"limitCents\":").append(budget.getLimitCents())
+                    .append(",\"spentCents\":").append(budget.getSpentCents())
+                    .append(",\"overLimit\":").append(budget.isOverLimit()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private String getRollups(HttpExchange exchange) {
+        Map<String, String> parameters = parameters(exchange);
+        YearMonth to = parameters.containsKey("to") ? parseMonth(parameters.get("to")) : YearMonth.now();
+        YearMonth from = parameters.containsKey("from") ? parseMonth(parameters.get("from")) : to.minusMonths(ROLLUP_MONTHS - 1);
+        if (from.isAfter(to)) {
+            throw new RequestException(400, "from is after to");
+        }
+        StringBuilder json = new StringBuilder("{");
+        await(dataService.getMonthlyBreakdown(from, to)).forEach((month, totals) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(month).append("\":{");
+            int start = json.length();
+            totals.forEach((category, cents) -> {
+                if (json.length() > start) {
+                    json.append(',');
+                }
+                json.append(quote(category)).append(':').append(cents);
+            });
+            json.append('}');
+        });
+        return json.append('}').toString();
+    }
+
+    // Timer lines as in the metrics dump, with each timer's average rate since the server started
+    private void getMetrics(HttpExchange exchange) throws IOException {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        StringBuilder text = new StringBuilder();
+        for (Metrics.Timer timer : Metrics.getTimers()) {
+            text.append(timer).append(String.format(" rate=%.1f/s%n", timer.getCount() / seconds));
+        }
+        send(exchange, 200, "text/plain; charset=utf-8", text.toString());
+    }
+
+    // Checks the method, times the request and turns failures into error responses
+    private HttpHandler route(String method, Metrics.Timer timer, Handler handler) {
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    throw new RequestException(405, method + " only");
+                }
+                send(exchange, 200, "application/json", handler.handle(exchange));
+            } catch (RequestException e) {
+                timer.recordError();
+                send(exchange, e.status, "application/json", "{\"error\":" + quote(e.getMessage()) + "}");
+            } catch (RuntimeException e) {
+                timer.recordError();
+                e.printStackTrace();
+                send(exchange, 500, "application/json", "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+            } catch (IOException e) {
+                timer.recordError();
+                e.printStackTrace();
+                // Nothing more can be sent once the response headers are out
+                if (exchange.getResponseCode() == -1) {
+                    send(exchange, 500, "application/json", "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+                }
+            } finally {
+                timer.recordSince(start);
+                exchange.close();
+            }
+        };
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Transaction parseTransaction(List<String> row, int accountId, int line) {
+        if (row.size() < 4) {
+            throw new RequestException(400, "Line " + line + ": expected amount,date,description,category");
+        }
+        try {
+            long amountCents = Money.parse(row.get(0));
+            LocalDate date = LocalDate.parse(row.get(1).trim());
+            String category = row.get(3).trim();
+            if (category.isEmpty()) {
+                throw new RequestException(400, "Line " + line + ": category is required");
+            }
+            Transaction transaction = Transaction.ofCents(0, amountCents, EpochDays.toDate(date.toEpochDay()),
+                    row.get(2), category, -1);
+            transaction.setAccountId(accountId);
+            return transaction;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new RequestException(400, "Line " + line + ": " + e.getMessage());
+        }
+    }
+
+    private static YearMonth parseMonth(String text) {
+        try {
+            return YearMonth.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new RequestException(400, "Expected a month as YYYY-MM: " + text);
+        }
+    }
+
+    // The account query parameter, or the fallback when absent. Foreign keys are
+    // off, so an unknown id would otherwise be written and read without complaint.
+    private int accountParameter(HttpExchange exchange, int fallback) {
+        String account = parameters(exchange).get("account");
+        if (account == null) {
+            return fallback;
+        }
+        int accountId;
+        try {
+            accountId = Integer.parseInt(account);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "account must be a number: " + account);
+        }
+        if (!await(dataService.accountExists(accountId))) {
+            throw new RequestException(404, "No account " + accountId);
+        }
+        return accountId;
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    // Rejects an oversized body from its Content-Length before reading anything, and
+    // reads at most one byte past the limit when the length is not given up front
+    private static String readBody(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        // HttpServer has already rejected a malformed length
+        if (length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES) {
+            throw new RequestException(413, "Request body is over " + MAX_BODY_BYTES + " bytes");
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new RequestException(413, "Request body is over " + MAX_BODY_BYTES + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RequestException(400, "Could not read the request body: " + e.getMessage());
+        }
+    }
+
+    // RFC 4180 rows: quoted fields may hold commas, doubled quotes and line breaks
+    static List<List<String>> parseCsv(String text) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                row.add(field.toString());
+                field.setLength(0);
+                rows.add(row);
+                row = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        if (field.length() > 0 || !row.isEmpty()) {
+            row.add(field.toString());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String quote(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Metrics.startDumpIfConfigured();
+        DatabaseHandler databaseHandler = new DatabaseHandler();
+        TransactionJournal journal = null;
+        try {
+            journal = new TransactionJournal(Paths.get("transactions.journal"), databaseHandler);
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, writing transactions directly: " + e.getMessage());
+        }
+        DataService dataService = new DataService(databaseHandler, journal);
+        FinanceServer server = new FinanceServer(dataService, port, DEFAULT_THREADS);
+        TransactionJournal openJournal = journal;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            dataService.shutdown();
+            if (openJournal != null) {
+                openJournal.close();
+            }
+        }, "server-shutdown"));
+        server.start();
+    }
+}
@@ -24,7 +24,7 @@ public class FinanceTracker {
                     addBudget(account);
                     break;
                 case 3:
-                    System.out.println("Total Balance: " + account.calculateTotalBalance());
+                    System.out.println("Total Balance: " + Money.format(account.getTotalBalanceCents()));
                     break;
                 case 4:
                     account.checkBudgets();
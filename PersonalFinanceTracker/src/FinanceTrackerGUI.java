@@ -1,48 +1,80 @@
 import org.jdesktop.swingx.JXDatePicker;
 
 import javax.swing.*;
-import javax.swing.text.DefaultCaret;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class FinanceTrackerGUI {
     private Account account;
     private DatabaseHandler databaseHandler;
+    private DataService dataService;
+    private TransactionJournal journal;
     private JFrame frame;
     private JDialog transactionDialog, budgetDialog;
     private JTextField amountField, descriptionField, categoryField, budgetCategoryField, budgetLimitField;
     private JXDatePicker datePicker;
-    private JTextArea outputArea;
+    private JTable transactionTable;
+    private TransactionTableModel transactionTableModel;
+    private JTextField filterField;
     private JLabel totalSpentLabel;
     private JButton viewTransactionsButton, exportTransactionsButton; 
-    private double totalSpent = 0.0;
+    private long totalSpentCents = 0;
     private SimpleDateFormat dateFormat;
     private JButton viewChartsButton; 
+    private ChartDataModel chartDataModel;
+    private PieChart chartWindow;
+    // Pause in typing before the search box queries
+    private static final int SEARCH_DELAY_MS = 200;
+    // Buttons that need the database, enabled once it has opened
+    private JButton[] dataButtons;
 
 
     class BackgroundPanel extends JPanel {
         private Image backgroundImage;
 
         public BackgroundPanel(String filePath) {
-           backgroundImage = new ImageIcon(filePath).getImage();
             setOpaque(false);
-    }
+            // Decoded off the EDT; the panel paints without it until it is ready
+            CompletableFuture.supplyAsync(() -> new ImageIcon(filePath).getImage())
+                    .thenAcceptAsync(image -> {
+                        backgroundImage = image;
+                        repaint();
+                    }, DataService.EDT);
+        }
 
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            g.drawImage(backgroundImage, 0, 0, this.getWidth(), this.getHeight(), this);
+            if (backgroundImage != null) {
+                g.drawImage(backgroundImage, 0, 0, this.getWidth(), this.getHeight(), this);
+            }
         }
     }
 
     public FinanceTrackerGUI(String backgroundImagePath) {
-        account = new Account();
-        databaseHandler = new DatabaseHandler();
+        this(backgroundImagePath, CompletableFuture.supplyAsync(DatabaseHandler::new));
+    }
+
+    // The frame is built and shown while the database opens on another thread.
+    // The buttons and the table come alive once it is ready.
+    public FinanceTrackerGUI(String backgroundImagePath, CompletableFuture<DatabaseHandler> database) {
         dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 
         frame = new JFrame("Finance Tracker");
@@ -75,6 +107,12 @@ public class FinanceTrackerGUI {
 
         viewChartsButton = new JButton("View Charts");
         viewChartsButton.addActionListener(this::openChartWindow);
+
+        dataButtons = new JButton[] {manageTransactionsButton, manageBudgetsButton,
+                viewTransactionsButton, exportTransactionsButton, viewChartsButton};
+        for (JButton button : dataButtons) {
+            button.setEnabled(false);
+        }
       
         
         JPanel buttonPanel = new JPanel(new GridLayout(4, 1, 5, 5)); 
@@ -86,26 +124,120 @@ public class FinanceTrackerGUI {
         buttonPanel.add(viewChartsButton);
         frame.add(buttonPanel, BorderLayout.SOUTH);
 
-        // Initialize transactions JTextArea
-        outputArea = new JTextArea(10, 40);
-        outputArea.setEditable(false);
-        DefaultCaret caret = (DefaultCaret) outputArea.getCaret();
-        caret.setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
-
         // Initialize totalSpentLabel
         totalSpentLabel = new JLabel("Total Spent: $0.00");
         totalSpentLabel.setForeground(Color.WHITE);
 
+        // Transactions table, paged in from the database as it scrolls. Its model is
+        // set once the database is open.
+        transactionTable = new JTable();
+        transactionTable.setAutoCreateRowSorter(false);
+        transactionTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent me) {
+                int column = transactionTable.columnAtPoint(me.getPoint());
+                if (column >= 0 && transactionTableModel != null) {
+                    transactionTableModel.sortBy(transactionTable.convertColumnIndexToModel(column));
+                    transactionTable.getTableHeader().repaint();
+                }
+            }
+        });
+        JScrollPane tableScrollPane = new JScrollPane(transactionTable);
+        tableScrollPane.setPreferredSize(new Dimension(500, 200));
+
+        // Searches as the user types, once typing pauses; Enter searches right away
+        filterField = new JTextField(20);
+        Timer searchDelay = new Timer(SEARCH_DELAY_MS, ae -> applySearch());
+        searchDelay.setRepeats(false);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                searchDelay.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                searchDelay.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+            }
+        });
+        filterField.addActionListener(ae -> {
+            searchDelay.stop();
+            applySearch();
+        });
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.setOpaque(false);
+        filterPanel.add(new JLabel("Search:"));
+        filterPanel.add(filterField);
+
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.setOpaque(false);
-        mainPanel.add(outputArea, BorderLayout.CENTER);
+        mainPanel.add(filterPanel, BorderLayout.NORTH);
+        mainPanel.add(tableScrollPane, BorderLayout.CENTER);
         mainPanel.add(totalSpentLabel, BorderLayout.SOUTH);
 
         frame.add(mainPanel, BorderLayout.CENTER);
 
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent we) {
+                logStartup("first frame");
+            }
+        });
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+
+        DataService.deliver(database.thenApplyAsync(this::openServices), this::connect,
+                error -> showError(frame, "Error opening database", error));
+    }
+
+    private void applySearch() {
+        if (transactionTableModel != null) {
+            transactionTableModel.setFilter(filterField.getText());
+        }
+    }
+
+    // Runs off the EDT: the journal replays any entries the database has not applied yet
+    private DataService openServices(DatabaseHandler handler) {
+        databaseHandler = handler;
+        // Share the database's category ids so rows read back need no re-interning
+        account = new Account(new ObjectLedger(), databaseHandler.getCategories());
+        // New transactions are acknowledged once journaled and written to the database in batches
+        try {
+            journal = new TransactionJournal(Paths.get("transactions.journal"), databaseHandler);
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, writing transactions directly: " + e.getMessage());
+        }
+        return new DataService(databaseHandler, journal);
+    }
+
+    private void connect(DataService service) {
+        dataService = service;
+        // Alerts come from the budget tracker, only when a budget crosses 80% or 100%
+        dataService.getBudgetTracker().addListener(event -> SwingUtilities.invokeLater(() -> showBudgetAlert(event)));
+        transactionTableModel = new TransactionTableModel(dataService);
+        if (journal != null) {
+            // Journaled rows become visible when their batch is flushed
+            journal.addFlushListener(() -> SwingUtilities.invokeLater(transactionTableModel::refresh));
+        }
+        transactionTable.setModel(transactionTableModel);
+        applySearch(); // Anything typed while the database was opening
+        for (JButton button : dataButtons) {
+            button.setEnabled(true);
+        }
+        logStartup("database ready");
+        // The chart library is only needed for the chart window; warm it up in the background
+        PieChart.preload();
+    }
+
+    // Times are from JVM start, so a regression anywhere before the first frame shows up
+    private static void logStartup(String milestone) {
+        System.out.println("Startup: " + milestone + " after " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
     }
 
     private void showTransactionDialog(ActionEvent e) {
@@ -134,7 +266,9 @@ public class FinanceTrackerGUI {
             transactionInputPanel.add(categoryField);
             transactionInputPanel.add(addTransactionButton);
 
-            JScrollPane scrollPane = new JScrollPane(outputArea);
+            // Shares the main table's model, so it updates when the model refreshes
+            JScrollPane scrollPane = new JScrollPane(new JTable(transactionTableModel));
+            scrollPane.setPreferredSize(new Dimension(500, 200));
             transactionDialog.add(scrollPane, BorderLayout.CENTER);
             transactionDialog.add(transactionInputPanel, BorderLayout.NORTH);
 
@@ -146,43 +280,30 @@ public class FinanceTrackerGUI {
 
     private void addTransaction() {
         try {
-            double amount = Double.parseDouble(amountField.getText());
+            long amountCents = Money.parse(amountField.getText());
             Date date = datePicker.getDate();
             String description = descriptionField.getText();
             String category = categoryField.getText();
 
             // Create a new Transaction object
-            Transaction transaction = new Transaction(amount, date, description, category);
+            Transaction transaction = Transaction.ofCents(0, amountCents, date, description, category, -1);
             
-            // Add the transaction to the account and log it to the database
+            // Add the transaction to the account and log it to the database in the background
             account.addTransaction(transaction);
-            databaseHandler.insertTransaction(amount, date, description, category); // This line logs the transaction to the database
+            CompletableFuture<Void> inserted = dataService.insertTransactionCents(amountCents, date, description, category);
 
-            // Update the spent amount in the in-memory budget object
-            Budget budget = account.getBudgets().get(category);
-            if (budget != null) {
-                budget.addSpending(amount); // Update the spent amount
-                databaseHandler.updateBudgetSpent(category, budget.getSpent()); // Persist the change to the database
+            // Budget spent amounts are updated by the budget tracker after the insert
 
-                // Check if the spending exceeds the budget and alert the user
-                if (budget.isOverLimit()) {
-                    JOptionPane.showMessageDialog(frame, 
-                        "Warning: The spending for " + category + " has exceeded the budget limit!",
-                        "Budget Limit Exceeded", 
-                        JOptionPane.WARNING_MESSAGE);
-                }
-            } else {
-                // Optionally, handle the case where there is no budget for the category
-                System.out.println("No budget found for category: " + category);
-            }
+            // Update the total spent label; the table refreshes once the insert lands
+            totalSpentCents += amountCents;
+            totalSpentLabel.setText("Total Spent: $" + Money.format(totalSpentCents));
 
-            // Update the total spent label and the transactions display
-            totalSpent += amount;
-            totalSpentLabel.setText("Total Spent: $" + String.format("%.2f", totalSpent));
-            refreshTransactions(); // Update the transactions display
-            checkBudgets(); // Refresh the budget status display
-
-            JOptionPane.showMessageDialog(transactionDialog, "Transaction added successfully!");
+            DataService.deliver(inserted,
+                    v -> {
+                        transactionTableModel.refresh();
+                        JOptionPane.showMessageDialog(transactionDialog, "Transaction added successfully!");
+                    },
+                    error -> showError(transactionDialog, "Error adding transaction", error));
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(transactionDialog, "Error adding transaction: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
@@ -190,16 +311,6 @@ public class FinanceTrackerGUI {
 
 
 
-    private void refreshTransactions() {
-        List<Transaction> transactions = account.getTransactions();
-        StringBuilder transactionText = new StringBuilder("Transactions:\n");
-        for (Transaction transaction : transactions) {
-            transactionText.append(transaction.toString()).append("\n");
-        }
-        outputArea.setText(transactionText.toString());
-    }
-
-
     private void showBudgetDialog(ActionEvent e) {
         if (budgetDialog == null) {
             budgetDialog = new JDialog(frame, "Budgets", true);
@@ -224,7 +335,15 @@ public class FinanceTrackerGUI {
             JButton deleteBudgetButton = new JButton("Delete Budget");
             deleteBudgetButton.addActionListener(ae -> {
                 String categoryToDelete = budgetCategoryField.getText();
-                if (!categoryToDelete.isEmpty() && budgetExists(categoryToDelete)) {
+                if (categoryToDelete.isEmpty()) {
+                    JOptionPane.showMessageDialog(budgetDialog, "Budget category does not exist or field is empty.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                DataService.deliver(budgetExists(categoryToDelete), exists -> {
+                    if (!exists) {
+                        JOptionPane.showMessageDialog(budgetDialog, "Budget category does not exist or field is empty.", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
                     int confirm = JOptionPane.showConfirmDialog(
                         budgetDialog, 
                         "Are you sure you want to delete the budget for category: " + categoryToDelete + "?",
@@ -234,9 +353,7 @@ public class FinanceTrackerGUI {
                     if (confirm == JOptionPane.YES_OPTION) {
                         deleteBudget(categoryToDelete);
                     }
-                } else {
-                    JOptionPane.showMessageDialog(budgetDialog, "Budget category does not exist or field is empty.", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                }, error -> showError(budgetDialog, "Error deleting budget", error));
             });
 
             JButton checkBudgetsButton = new JButton("Check Budgets");
@@ -259,38 +376,69 @@ public class FinanceTrackerGUI {
     private void addBudget() {
         try {
             String category = budgetCategoryField.getText();
-            double limit = Double.parseDouble(budgetLimitField.getText());
-
-            if (budgetExists(category)) {
-                updateBudgetLimit(category, limit);
-                JOptionPane.showMessageDialog(budgetDialog, "Budget updated successfully!");
-            } else {
-                boolean isInserted = databaseHandler.insertBudget(category, limit);
-                if (isInserted) {
-                    account.addBudget(category, limit);  // Assuming account needs to be updated too
-                    JOptionPane.showMessageDialog(budgetDialog, "Budget added successfully!");
+            long limitCents = Money.parse(budgetLimitField.getText());
+
+            DataService.deliver(budgetExists(category), exists -> {
+                if (exists) {
+                    DataService.deliver(updateBudgetLimit(category, limitCents), isUpdated -> {
+                        if (isUpdated) {
+                            JOptionPane.showMessageDialog(budgetDialog, "Budget updated successfully!");
+                        } else {
+                            JOptionPane.showMessageDialog(budgetDialog, "Failed to update budget.", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }, error -> showError(budgetDialog, "Error updating budget", error));
                 } else {
-                    JOptionPane.showMessageDialog(budgetDialog, "Failed to add new budget.", "Error", JOptionPane.ERROR_MESSAGE);
+                    DataService.deliver(dataService.insertBudgetCents(category, limitCents), isInserted -> {
+                        if (isInserted) {
+                            account.addBudget(category, Money.toAmount(limitCents));  // Assuming account needs to be updated too
+                            JOptionPane.showMessageDialog(budgetDialog, "Budget added successfully!");
+                        } else {
+                            JOptionPane.showMessageDialog(budgetDialog, "Failed to add new budget.", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }, error -> showError(budgetDialog, "Error adding budget", error));
                 }
-            }
+            }, error -> showError(budgetDialog, "Error adding budget", error));
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(budgetDialog, "Error adding budget: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
 
-    private boolean budgetExists(String category) {
+    private CompletableFuture<Boolean> budgetExists(String category) {
         // Check if the budget category already exists in the "budgets" table
-        return databaseHandler.budgetExists(category);
+        return dataService.budgetExists(category);
     }
     
-    private void updateBudgetLimit(String category, double limit) {
+    private CompletableFuture<Boolean> updateBudgetLimit(String category, long limitCents) {
         // Update the budget's limit in the "budgets" table
-        databaseHandler.updateBudgetLimit(category, limit);
+        return dataService.updateBudgetLimitCents(category, limitCents);
     }
     
     private void checkBudgets() {
-        List<Budget> budgets = databaseHandler.getAllBudgets();
+        DataService.deliver(dataService.getBudgetStatus(), this::showBudgetStatus,
+                error -> showError(budgetDialog, "Error loading budgets", error));
+    }
+
+    private void showBudgetAlert(BudgetEvent event) {
+        if (!event.isRising()) {
+            return; // Falling back below a threshold needs no warning
+        }
+        String spending = "$" + Money.format(event.getSpentCents()) + " of $" + Money.format(event.getLimitCents());
+        if (event.getThreshold() >= 1.0) {
+            JOptionPane.showMessageDialog(frame,
+                "Warning: The spending for " + event.getCategory() + " has exceeded the budget limit (" + spending + ")!",
+                "Budget Limit Exceeded",
+                JOptionPane.WARNING_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(frame,
+                "The spending for " + event.getCategory() + " has passed "
+                    + String.format("%.0f%%", event.getThreshold() * 100) + " of the budget limit (" + spending + ").",
+                "Budget Warning",
+                JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private void showBudgetStatus(List<Budget> budgets) {
         StringBuilder message = new StringBuilder();
         
         if (budgets.isEmpty()) {
@@ -298,16 +446,13 @@ public class FinanceTrackerGUI {
         } else {
             message.append("Budgets:\n");
             for (Budget budget : budgets) {
-                // Assuming 'isOverLimit' checks if the spent amount exceeds the limit
+                message.append("Category: ").append(budget.getCategory())
+                       .append(", Limit: $").append(Money.format(budget.getLimitCents()))
+                       .append(", Spent: $").append(Money.format(budget.getSpentCents()));
                 if (budget.isOverLimit()) {
-                    message.append("Category: ").append(budget.getCategory())
-                           .append(", Limit: $").append(String.format("%.2f", budget.getLimit()));
-                           
-                } else {
-                    message.append("Category: ").append(budget.getCategory())
-                           .append(", Limit: $").append(String.format("%.2f", budget.getLimit()))
-                           .append("\n");
+                    message.append(" (over limit)");
                 }
+                message.append("\n");
             }
         }
 
@@ -321,73 +466,114 @@ public class FinanceTrackerGUI {
     }
 
     private void displayTransactions() {
-        // Fetch transactions from the database using the DatabaseHandler
-        List<Transaction> transactions = databaseHandler.getAllTransactions();
-        double totalSpent = 0;
-
-        // Display transactions in the JTextArea
-        StringBuilder transactionText = new StringBuilder("Transactions:\n");
-        for (Transaction transaction : transactions) {
-            transactionText.append(transaction.toString()).append("\n");
-            totalSpent += transaction.getAmount();
-        }
-        outputArea.setText(transactionText.toString());
-        totalSpentLabel.setText("Total Spent: $" + String.format("%.2f", totalSpent));
+        // The table model fetches only the rows that are on screen
+        transactionTableModel.refresh();
     }
     
     private void updateTotalSpent() {
-        List<Transaction> transactions = databaseHandler.getAllTransactions();
-        double totalSpent = 0; // Initialize total spent
-        for (Transaction transaction : transactions) {
-            totalSpent += transaction.getAmount(); // Accumulate the amount spent
-        }
-        // Update the total spent label
-        totalSpentLabel.setText("Total Spent: $" + String.format("%.2f", totalSpent));
+        // Update the total spent label once the sum is ready
+        DataService.deliver(dataService.getTotalSpentCents(),
+                total -> totalSpentLabel.setText("Total Spent: $" + Money.format(total)),
+                error -> showError(frame, "Error loading total spent", error));
     }
 
     private void exportTransactions(ActionEvent e) {
-        List<Transaction> transactions = databaseHandler.getAllTransactions();
-        if (transactions.isEmpty()) {
-            JOptionPane.showMessageDialog(frame, "No transactions to export.", "Export Transactions", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
+        DataService.deliver(dataService.countTransactions(), count -> {
+            if (count == 0) {
+                JOptionPane.showMessageDialog(frame, "No transactions to export.", "Export Transactions", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
 
-        JFileChooser fileChooser = new JFileChooser();
-        int choice = fileChooser.showSaveDialog(frame);
+            JFileChooser fileChooser = new JFileChooser();
+            int choice = fileChooser.showSaveDialog(frame);
 
-        if (choice == JFileChooser.APPROVE_OPTION) {
-            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-            try (FileWriter writer = new FileWriter(filePath)) {
-                for (Transaction transaction : transactions) {
-                    writer.write(transaction.getAmount() + "," + dateFormat.format(transaction.getDate()) + "," +
-                            transaction.getDescription() + "," + transaction.getCategory() + "\n");
-                }
-                JOptionPane.showMessageDialog(frame, "Transactions exported successfully.", "Export Transactions", JOptionPane.INFORMATION_MESSAGE);
+            if (choice == JFileChooser.APPROVE_OPTION) {
+                exportTo(fileChooser.getSelectedFile().toPath());
+            }
+        }, error -> showError(frame, "Error exporting transactions", error));
+    }
+
+    // Streams the export on a DataService thread with a cancellable progress monitor
+    private void exportTo(Path target) {
+        CsvExporter exporter = new CsvExporter(databaseHandler);
+        ProgressMonitor monitor = new ProgressMonitor(frame, "Exporting transactions", null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        Timer cancelPoll = new Timer(200, te -> {
+            if (monitor.isCanceled()) {
+                exporter.cancel();
+            }
+        });
+        cancelPoll.start();
+
+        CompletableFuture<Long> export = dataService.query("export:" + target, () -> {
+            try {
+                return exporter.export(target, (rowsWritten, totalRows) -> SwingUtilities.invokeLater(() -> {
+                    monitor.setNote(rowsWritten + " of " + totalRows + " rows");
+                    monitor.setProgress(totalRows == 0 ? 100 : (int) (rowsWritten * 100 / totalRows));
+                }));
             } catch (IOException ex) {
-                JOptionPane.showMessageDialog(frame, "Error exporting transactions: " + ex.getMessage(), "Export Transactions", JOptionPane.ERROR_MESSAGE);
+                throw new UncheckedIOException(ex);
             }
-        }
+        });
+        DataService.deliver(export, rows -> {
+            cancelPoll.stop();
+            monitor.close();
+            JOptionPane.showMessageDialog(frame, "Transactions exported successfully.", "Export Transactions", JOptionPane.INFORMATION_MESSAGE);
+        }, error -> {
+            cancelPoll.stop();
+            monitor.close();
+            if (error instanceof CancellationException) {
+                JOptionPane.showMessageDialog(frame, "Export cancelled.", "Export Transactions", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(frame, "Error exporting transactions: " + error.getMessage(), "Export Transactions", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     private void deleteBudget(String category) {
-        boolean isDeleted = databaseHandler.deleteBudget(category);
-        if (isDeleted) {
-            JOptionPane.showMessageDialog(frame, "Budget deleted successfully!", "Delete Budget", JOptionPane.INFORMATION_MESSAGE);
-        } else {
-            JOptionPane.showMessageDialog(frame, "Failed to delete budget. It may not exist or an error occurred.", "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        checkBudgets(); // Refresh the UI to reflect the deletion
+        DataService.deliver(dataService.deleteBudget(category), isDeleted -> {
+            if (isDeleted) {
+                JOptionPane.showMessageDialog(frame, "Budget deleted successfully!", "Delete Budget", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(frame, "Failed to delete budget. It may not exist or an error occurred.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            checkBudgets(); // Refresh the UI to reflect the deletion
+        }, error -> showError(frame, "Error deleting budget", error));
+    }
+
+    private void showError(Component parent, String message, Throwable error) {
+        JOptionPane.showMessageDialog(parent, message + ": " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
     }
     
+    // The chart window is built once, from data loaded off the EDT, and reused
     private void openChartWindow(ActionEvent e) {
-        PieChart pieChartWindow = new PieChart("Budget and Expense Visualization");
-        pieChartWindow.setVisible(true);
+        if (chartWindow != null) {
+            chartWindow.setVisible(true);
+            chartWindow.toFront();
+            return;
+        }
+        if (chartDataModel == null) {
+            chartDataModel = new ChartDataModel(dataService);
+        }
+        viewChartsButton.setEnabled(false);
+        DataService.deliver(chartDataModel.load(), model -> {
+            chartWindow = new PieChart("Budget and Expense Visualization", model);
+            chartWindow.setVisible(true);
+            viewChartsButton.setEnabled(true);
+        }, error -> {
+            viewChartsButton.setEnabled(true);
+            showError(frame, "Error loading charts", error);
+        });
     }
     
     public static void main(String[] args) {
+        // Metrics are always on through JMX; -Dmetrics.file=<path> also dumps them to a file
+        Metrics.startDumpIfConfigured();
+        // Start opening the database before Swing is even up
+        CompletableFuture<DatabaseHandler> database = CompletableFuture.supplyAsync(DatabaseHandler::new);
         SwingUtilities.invokeLater(() -> {
             String backgroundImagePath = "images/bg.jpg"; // Update with your image path
-            new FinanceTrackerGUI(backgroundImagePath);
+            new FinanceTrackerGUI(backgroundImagePath, database);
         });
     }
 }
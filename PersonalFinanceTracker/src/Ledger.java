@@ -0,0 +1,41 @@
+import java.util.Collection;
+import java.util.List;
+
+// Storage behind an Account's transactions. ObjectLedger keeps the original
+// List<Transaction>; ColumnarLedger keeps the same data in primitive arrays;
+// SegmentedLedger is an append-only log that takes concurrent adds.
+public interface Ledger {
+    void add(Transaction transaction);
+
+    default void addAll(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    // Replace the contents with the given transactions
+    void replaceAll(List<Transaction> transactions);
+
+    int size();
+
+    List<Transaction> getTransactions();
+
+    // Full scans in cents, used when the running totals in Account can't answer the question
+    long sumAmountCents();
+
+    long sumCategoryCents(String category);
+
+    // Inclusive range of epoch days
+    long sumBetweenCents(long fromEpochDay, long toEpochDay);
+
+    // Approximate heap usage in bytes, assuming a 64-bit JVM with compressed oops
+    long estimatedBytes();
+
+    static long estimateStringBytes(String s) {
+        if (s == null) {
+            return 0;
+        }
+        // String object (24) plus its byte[] (16 byte header, Latin-1 contents, 8 byte aligned)
+        return 24 + ((16 + s.length() + 7) & ~7L);
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Process-wide latency timers. Each timer counts calls and errors and keeps a
+// histogram of latencies in power-of-two buckets, so recording is a few LongAdder
+// increments and never allocates. Timers are published as JMX MXBeans under
+// PersonalFinanceTracker:type=<group>,name=<name> and can also be dumped to a
+// file periodically (see startDump).
+public final class Metrics {
+    private static final String DOMAIN = "PersonalFinanceTracker";
+    // System properties read by startDumpIfConfigured
+    public static final String DUMP_FILE_PROPERTY = "metrics.file";
+    public static final String DUMP_PERIOD_PROPERTY = "metrics.period.seconds";
+    private static final long DEFAULT_DUMP_PERIOD_SECONDS = 60;
+
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    public interface TimerMXBean {
+        String getGroup();
+
+        String getName();
+
+        long getCount();
+
+        long getErrors();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP90Millis();
+
+        double getP99Millis();
+
+        // Calls per bucket; bucket i holds latencies from 2^(i-1) up to 2^i nanoseconds
+        long[] getHistogram();
+
+        void reset();
+    }
+
+    public static final class Timer implements TimerMXBean {
+        private static final int BUCKETS = 64;
+
+        private final String group;
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private Timer(String group, String name) {
+            this.group = group;
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+            // Only contend on the max when it actually moves
+            if (nanos > maxNanos.get()) {
+                maxNanos.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        // Records the time since a System.nanoTime() reading
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void recordError() {
+            errors.increment();
+        }
+
+        @Override
+        public String getGroup() {
+            return group;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long calls = getCount();
+            return calls == 0 ? 0 : totalNanos.sum() / 1e6 / calls;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileMillis(0.50);
+        }
+
+        @Override
+        public double getP90Millis() {
+            return percentileMillis(0.90);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        @Override
+        public long[] getHistogram() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        @Override
+        public void reset() {
+            count.reset();
+            errors.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+
+        // Upper bound of the bucket holding the percentile, capped at the max seen
+        private double percentileMillis(double percentile) {
+            long[] counts = getHistogram();
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(Math.pow(2, i), maxNanos.get()) / 1e6;
+                }
+            }
+            return getMaxMillis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s.%s{count=%d, errors=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms}",
+                    group, name, getCount(), getErrors(), getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+        }
+    }
+
+    // The timer for an operation, created and registered with JMX on first use.
+    // Callers keep the result in a static field rather than looking it up per call.
+    public static Timer timer(String group, String name) {
+        return TIMERS.computeIfAbsent(group + "." + name, key -> {
+            Timer timer = new Timer(group, name);
+            register(timer);
+            return timer;
+        });
+    }
+
+    public static List<Timer> getTimers() {
+        List<Timer> timers = new ArrayList<>(TIMERS.values());
+        timers.sort(Comparator.comparing((Timer t) -> t.getGroup()).thenComparing(Timer::getName));
+        return timers;
+    }
+
+    private static void register(Timer timer) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + sanitize(timer.getGroup())
+                    + ",name=" + sanitize(timer.getName()));
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(timer, objectName);
+            }
+        } catch (JMException e) {
+            System.out.println("Could not register metrics for " + timer.getGroup() + "." + timer.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // Characters that would need quoting in an ObjectName value
+    private static String sanitize(String value) {
+        return value.replaceAll("[,=:\"*?\\n]", "_");
+    }
+
+    // Writes every timer to the file each period, replacing the previous dump
+    public static synchronized void startDump(Path file, long periodSeconds) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        System.out.println("Dumping metrics to " + file + " every " + periodSeconds + "s");
+    }
+
+    // Starts the periodic dump when -Dmetrics.file=<path> is set
+    public static void startDumpIfConfigured() {
+        String file = System.getProperty(DUMP_FILE_PROPERTY);
+        if (file != null && !file.isEmpty()) {
+            startDump(Paths.get(file), Long.getLong(DUMP_PERIOD_PROPERTY, DEFAULT_DUMP_PERIOD_SECONDS));
+        }
+    }
+
+    public static void dump(Path file) {
+        StringBuilder text = new StringBuilder();
+        text.append("# ").append(java.time.Instant.now()).append('\n');
+        for (Timer timer : getTimers()) {
+            text.append(timer).append('\n');
+        }
+        // Written next to the target and moved into place so readers never see half a dump
+        Path partFile = file.resolveSibling(file.getFileName() + ".part");
+        try {
+            Files.write(partFile, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Error writing metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Money as a whole number of cents in a long. Amounts are stored, summed and
+// compared in cents, so totals are exact and do not depend on summation order;
+// doubles only appear at the edges (text entry, charts, the journal's record
+// layout) and are converted once on the way in.
+public final class Money {
+    public static final int CENTS_PER_UNIT = 100;
+
+    // Largest magnitude toCents accepts; beyond it a double has no cent resolution left
+    private static final double MAX_AMOUNT = (1L << 53) / (double) CENTS_PER_UNIT;
+
+    private Money() {
+    }
+
+    // Nearest cent
+    public static long toCents(double amount) {
+        if (Double.isNaN(amount) || Math.abs(amount) > MAX_AMOUNT) {
+            throw new IllegalArgumentException("Amount out of range: " + amount);
+        }
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toAmount(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    // Decimal text such as "12.5" or "-3.999", rounded half up to the cent.
+    // Throws NumberFormatException for anything else.
+    public static long parse(String text) {
+        try {
+            return new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    // Plain decimal with two places, e.g. "-0.05" or "1234.50"
+    public static String format(long cents) {
+        long units = cents / CENTS_PER_UNIT;
+        long rest = Math.abs(cents % CENTS_PER_UNIT);
+        return (cents < 0 && units == 0 ? "-" : "") + units + (rest < 10 ? ".0" : ".") + rest;
+    }
+
+    // Sum of values[from, to). Kept as a plain counted loop with one accumulator:
+    // C2 unrolls it and turns it into SIMD adds (integer addition is associative,
+    // unlike the double sum it replaces, which has to run one element at a time).
+    // Overflow wraps, as it would past 92 quadrillion dollars.
+    public static long sum(long[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// The original object model: one Transaction (with its Date and Strings) per entry
+public class ObjectLedger implements Ledger {
+    private List<Transaction> transactions = new ArrayList<>();
+
+    @Override
+    public void add(Transaction transaction) {
+        transactions.add(transaction);
+    }
+
+    @Override
+    public void replaceAll(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    @Override
+    public int size() {
+        return transactions.size();
+    }
+
+    @Override
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public long sumAmountCents() {
+        long sum = 0;
+        for (Transaction transaction : transactions) {
+            sum += transaction.getAmountCents();
+        }
+        return sum;
+    }
+
+    @Override
+    public long sumCategoryCents(String category) {
+        long sum = 0;
+        for (Transaction transaction : transactions) {
+            if (category.equals(transaction.getCategory())) {
+                sum += transaction.getAmountCents();
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long sumBetweenCents(long fromEpochDay, long toEpochDay) {
+        long sum = 0;
+        for (Transaction transaction : transactions) {
+            long day = EpochDays.toEpochDay(transaction.getDate());
+            if (day >= fromEpochDay && day <= toEpochDay) {
+                sum += transaction.getAmountCents();
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // ArrayList plus its reference array
+        long bytes = 24 + 16 + 4L * transactions.size();
+        for (Transaction transaction : transactions) {
+            bytes += 40; // Transaction: header, id, amount, three references
+            bytes += 24; // java.util.Date
+            bytes += Ledger.estimateStringBytes(transaction.getDescription());
+            bytes += Ledger.estimateStringBytes(transaction.getCategory());
+        }
+        return bytes;
+    }
+}
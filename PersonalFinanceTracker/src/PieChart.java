@@ -1,23 +1,22 @@
 import java.awt.GridLayout;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.data.general.DefaultPieDataset;
 
+// Chart window over a ChartDataModel. The charts observe the model's datasets,
+// so the window is built once and kept up to date rather than reconstructed.
 public class PieChart extends JFrame {
-    private DatabaseHandler databaseHandler;
+    private final ChartDataModel chartDataModel;
 
-    public PieChart(String title) {
+    public PieChart(String title, ChartDataModel chartDataModel) {
         super(title);
 
-        this.databaseHandler = new DatabaseHandler(); // Initialize your DatabaseHandler here
+        this.chartDataModel = chartDataModel;
 
         setLayout(new GridLayout(1, 2)); // Layout to display two charts side by side
 
@@ -30,49 +29,45 @@ public class PieChart extends JFrame {
         add(barChartPanel);
 
         setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing only hides the window so it can be shown again
+        setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
         setLocationRelativeTo(null);
     }
 
     private JPanel createBudgetPieChartPanel() {
-        DefaultPieDataset dataset = new DefaultPieDataset();
-        Map<String, Double> budgets = databaseHandler.getBudgetLimits(); // Method to fetch budget data
-
-        for (Map.Entry<String, Double> entry : budgets.entrySet()) {
-            dataset.setValue(entry.getKey(), entry.getValue());
-        }
-
         JFreeChart chart = ChartFactory.createPieChart(
                 "Budget Distribution",
-                dataset,
+                chartDataModel.getBudgetDataset(),
                 true, true, false);
 
         return new ChartPanel(chart);
     }
 
     private JPanel createExpenseBarChartPanel() {
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        Map<String, Double> expenses = databaseHandler.getMonthlyExpenses(); // Method to fetch expense data
-
-        for (Map.Entry<String, Double> entry : expenses.entrySet()) {
-            dataset.addValue(entry.getValue(), entry.getKey(), "Expenses");
-        }
-
+        // Year-to-date expenses per month, read from the pre-aggregated monthly rollup
         JFreeChart barChart = ChartFactory.createBarChart(
                 "Monthly Expenses",
-                "Category",
+                "Month",
                 "Amount",
-                dataset,
+                chartDataModel.getExpenseDataset(),
                 org.jfree.chart.plot.PlotOrientation.VERTICAL,
                 true, true, false);
 
         return new ChartPanel(barChart);
     }
 
+    // Loads and initializes the chart library off the EDT, so the first chart
+    // window does not pay for it
+    public static CompletableFuture<Void> preload() {
+        return CompletableFuture.runAsync(ChartFactory::getChartTheme);
+    }
+
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            PieChart demo = new PieChart("Budget and Expense Visualization");
+        ChartDataModel model = new ChartDataModel(new DataService(new DatabaseHandler()));
+        DataService.deliver(model.load(), loaded -> {
+            PieChart demo = new PieChart("Budget and Expense Visualization", loaded);
+            demo.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             demo.setVisible(true);
-        });
+        }, error -> System.out.println("Error loading chart data: " + error.getMessage()));
     }
 }
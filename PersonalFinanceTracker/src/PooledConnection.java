@@ -0,0 +1,96 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A connection borrowed from a ConnectionPool. Statements returned by prepare()
+// are cached per connection and must not be closed by the caller; close() on this
+// object returns the connection to the pool instead of closing it.
+public class PooledConnection implements AutoCloseable {
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statementCache;
+    // Operation being timed from acquire to close, or null
+    private Metrics.Timer operation;
+    private long operationStart;
+
+    PooledConnection(ConnectionPool pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+        // Access-ordered so the least recently used statement is evicted first
+        this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > STATEMENT_CACHE_SIZE) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    void begin(Metrics.Timer operation, long startNanos) {
+        this.operation = operation;
+        this.operationStart = startNanos;
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statementCache.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            pool.recordStatementHit();
+            return pstmt;
+        }
+        pool.recordStatementMiss();
+        pstmt = connection.prepareStatement(sql);
+        statementCache.put(sql, pstmt);
+        return pstmt;
+    }
+
+    // The underlying connection, for transaction control (setAutoCommit, commit, rollback)
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        try {
+            // Never hand a connection with an open transaction back to the pool
+            if (!connection.isClosed() && !connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error resetting pooled connection: " + e.getMessage());
+            closeQuietly();
+        }
+        if (operation != null) {
+            operation.recordSince(operationStart);
+            operation = null;
+        }
+        pool.release(this);
+    }
+
+    void closeQuietly() {
+        for (PreparedStatement pstmt : statementCache.values()) {
+            closeStatement(pstmt);
+        }
+        statementCache.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private static void closeStatement(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Several accounts in memory, partitioned by account id: each account is its own
+// Account with its own lock, so threads adding transactions to different accounts
+// never wait on each other and there is no portfolio-wide lock or running total.
+// The one shared structure is the category dictionary, whose lookups are lock-free.
+// Cross-account totals are merged from each account's own totals, taking the
+// locks one at a time; while writes are in progress they are exact per account
+// but not one snapshot across all accounts.
+public class Portfolio {
+    private static final int LOAD_CHUNK_SIZE = 10_000;
+
+    private final CategoryDictionary categories;
+    private final Supplier<Ledger> ledgers;
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+
+    public Portfolio() {
+        this(new CategoryDictionary());
+    }
+
+    public Portfolio(CategoryDictionary categories) {
+        this(categories, () -> new ColumnarLedger(categories));
+    }
+
+    // ledgers makes the ledger for each new account
+    public Portfolio(CategoryDictionary categories, Supplier<Ledger> ledgers) {
+        this.categories = categories;
+        this.ledgers = ledgers;
+    }
+
+    // Every account in the database with its budgets and transactions
+    public static Portfolio load(DatabaseHandler databaseHandler) {
+        Portfolio portfolio = new Portfolio(databaseHandler.getCategories());
+        CategoryDictionary names = databaseHandler.getAccounts();
+        for (int accountId = 0; accountId < names.capacity(); accountId++) {
+            if (names.nameOf(accountId) == null) {
+                continue;
+            }
+            for (Budget budget : databaseHandler.getBudgets(accountId)) {
+                portfolio.addBudget(accountId, budget.getCategory(), budget.getLimitCents());
+            }
+        }
+        // Streamed in chunks, so the whole table is never held as one list
+        List<Transaction> chunk = new ArrayList<>(LOAD_CHUNK_SIZE);
+        databaseHandler.forEachTransaction(transaction -> {
+            chunk.add(transaction);
+            if (chunk.size() == LOAD_CHUNK_SIZE) {
+                portfolio.addAll(chunk);
+                chunk.clear();
+            }
+        });
+        portfolio.addAll(chunk);
+        return portfolio;
+    }
+
+    public void add(Transaction transaction) {
+        Account account = partition(transaction.getAccountId());
+        synchronized (account) {
+            account.addTransaction(transaction);
+        }
+    }
+
+    // Splits the batch by account and adds each part under that account's lock only
+    public void addAll(Collection<Transaction> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Usually a batch comes from one account's feed; then it needs no copy
+        int first = batch.iterator().next().getAccountId();
+        boolean singleAccount = true;
+        for (Transaction transaction : batch) {
+            if (transaction.getAccountId() != first) {
+                singleAccount = false;
+                break;
+            }
+        }
+        if (singleAccount) {
+            Account account = partition(first);
+            synchronized (account) {
+                account.addTransactions(batch);
+            }
+            return;
+        }
+        Map<Integer, List<Transaction>> byAccount = new HashMap<>();
+        for (Transaction transaction : batch) {
+            byAccount.computeIfAbsent(transaction.getAccountId(), id -> new ArrayList<>()).add(transaction);
+        }
+        for (Map.Entry<Integer, List<Transaction>> entry : byAccount.entrySet()) {
+            Account account = partition(entry.getKey());
+            synchronized (account) {
+                account.addTransactions(entry.getValue());
+            }
+        }
+    }
+
+    public void addBudget(int accountId, String category, long limitCents) {
+        Account account = partition(accountId);
+        synchronized (account) {
+            account.addBudget(category, Money.toAmount(limitCents));
+        }
+    }
+
+    // Runs reader against one account while holding its lock; the account must not escape
+    public <T> T read(int accountId, Function<Account, T> reader) {
+        Account account = partition(accountId);
+        synchronized (account) {
+            return reader.apply(account);
+        }
+    }
+
+    public Set<Integer> getAccountIds() {
+        return new TreeSet<>(accounts.keySet());
+    }
+
+    public long getTotalBalanceCents(int accountId) {
+        return read(accountId, Account::getTotalBalanceCents);
+    }
+
+    // Sum of the per-account balances
+    public long getTotalBalanceCents() {
+        long total = 0;
+        for (Account account : accounts.values()) {
+            synchronized (account) {
+                total += account.getTotalBalanceCents();
+            }
+        }
+        return total;
+    }
+
+    public CategoryAmounts getCategoryTotals(int accountId) {
+        CategoryAmounts totals = new CategoryAmounts(categories);
+        read(accountId, account -> {
+            account.addCategoryTotalsTo(totals);
+            return null;
+        });
+        return totals;
+    }
+
+    // Per-account category totals merged into one
+    public CategoryAmounts getCategoryTotals() {
+        CategoryAmounts totals = new CategoryAmounts(categories);
+        for (Account account : accounts.values()) {
+            synchronized (account) {
+                account.addCategoryTotalsTo(totals);
+            }
+        }
+        return totals;
+    }
+
+    public CategoryDictionary getCategories() {
+        return categories;
+    }
+
+    private Account partition(int accountId) {
+        Account account = accounts.get(accountId);
+        return account != null ? account : accounts.computeIfAbsent(accountId, id -> new Account(ledgers.get(), categories));
+    }
+}
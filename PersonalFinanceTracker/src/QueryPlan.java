@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// SQLite's EXPLAIN QUERY PLAN output for a statement, with the questions that
+// matter for it: which indexes were used and whether any table is scanned in full.
+public class QueryPlan {
+    private static final Pattern INDEX = Pattern.compile("USING (?:COVERING )?INDEX (\\w+)");
+
+    private final String sql;
+    private final List<String> steps;
+
+    public QueryPlan(String sql, List<String> steps) {
+        this.sql = sql;
+        this.steps = new ArrayList<>(steps);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    // One line per plan step, e.g. "SEARCH t USING INDEX idx_transactions_date (date>? AND date<?)"
+    public List<String> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public List<String> getIndexes() {
+        List<String> indexes = new ArrayList<>();
+        for (String step : steps) {
+            Matcher matcher = INDEX.matcher(step);
+            if (matcher.find()) {
+                indexes.add(matcher.group(1));
+            }
+        }
+        return indexes;
+    }
+
+    // SCAN reads every row of a table, or of an index when one is named; SEARCH
+    // reads only the range its constraints select. Virtual tables (the full-text
+    // index) do their own lookups.
+    public boolean isFullScan() {
+        for (String step : steps) {
+            if (step.startsWith("SCAN ") && !step.contains("VIRTUAL TABLE") && !step.contains("CONSTANT ROW")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(sql);
+        for (String step : steps) {
+            text.append("\n  ").append(step);
+        }
+        return text.toString();
+    }
+}
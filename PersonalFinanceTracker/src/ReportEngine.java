@@ -0,0 +1,243 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-category statistics (CategoryStats) over a range of months. The range is
+// split into months with fork-join: each month is summarized on its own, from an
+// index range query, and the partial results are merged pairwise on the way back
+// up. Month summaries are cached. A month is only recomputed when DataService
+// reports a transaction in it, or when its row in monthly_totals no longer
+// matches the one the summary was built from (writes from the journal or from
+// another process). Description-only edits are not noticed by the latter.
+public class ReportEngine implements DataService.ChangeListener {
+    public static final int DEFAULT_TOP_SIZE = 5;
+
+    private final DatabaseHandler databaseHandler;
+    private final int topSize;
+    private final ForkJoinPool pool;
+    private final Map<YearMonth, MonthSummary> cache = new ConcurrentHashMap<>();
+    private final Set<YearMonth> dirty = ConcurrentHashMap.newKeySet();
+
+    // A cached month: per-category stats and the monthly_totals row they match
+    private static final class MonthSummary {
+        final CategoryAmounts totals;
+        final Map<String, CategoryStats> stats;
+
+        MonthSummary(CategoryAmounts totals, Map<String, CategoryStats> stats) {
+            this.totals = totals;
+            this.stats = stats;
+        }
+    }
+
+    public static class Report {
+        private final YearMonth from;
+        private final YearMonth to;
+        private final Map<String, CategoryStats> categories;
+        private final Map<YearMonth, Map<String, CategoryStats>> months;
+        private final int monthsComputed;
+        private final int topSize;
+
+        Report(YearMonth from, YearMonth to, Map<String, CategoryStats> categories,
+               Map<YearMonth, Map<String, CategoryStats>> months, int monthsComputed, int topSize) {
+            this.from = from;
+            this.to = to;
+            this.categories = categories;
+            this.months = months;
+            this.monthsComputed = monthsComputed;
+            this.topSize = topSize;
+        }
+
+        public YearMonth getFrom() {
+            return from;
+        }
+
+        public YearMonth getTo() {
+            return to;
+        }
+
+        // Stats per category over the whole range, by category name
+        public Map<String, CategoryStats> getCategories() {
+            return Collections.unmodifiableMap(categories);
+        }
+
+        // Stats per category for each month in the range that has transactions.
+        // Shared with the engine's cache; do not modify.
+        public Map<YearMonth, Map<String, CategoryStats>> getMonths() {
+            return Collections.unmodifiableMap(months);
+        }
+
+        // All categories together
+        public CategoryStats getTotal() {
+            CategoryStats total = new CategoryStats("Total", topSize);
+            for (CategoryStats stats : categories.values()) {
+                total.merge(stats);
+            }
+            return total;
+        }
+
+        // Months read from the database for this report; the rest came from the cache
+        public int getMonthsComputed() {
+            return monthsComputed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("Report " + from + " to " + to
+                    + " (" + monthsComputed + " months recomputed)");
+            for (CategoryStats stats : new TreeMap<>(categories).values()) {
+                text.append("\n  ").append(stats);
+            }
+            return text.toString();
+        }
+    }
+
+    public ReportEngine(DatabaseHandler databaseHandler) {
+        this(databaseHandler, DEFAULT_TOP_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Each month task holds a pooled connection while it reads, so parallelism is
+    // capped at the connection pool's size; more workers would only queue in acquire
+    public ReportEngine(DatabaseHandler databaseHandler, int topSize, int parallelism) {
+        this.databaseHandler = databaseHandler;
+        this.topSize = topSize;
+        this.pool = new ForkJoinPool(Math.max(1, Math.min(parallelism,
+                databaseHandler.getTransactionsPool().getMaxSize())));
+    }
+
+    // Also hears about new transactions straight away, before they reach monthly_totals
+    public ReportEngine(DataService dataService) {
+        this(dataService.getDatabaseHandler());
+        dataService.addChangeListener(this);
+    }
+
+    public Report report(YearMonth from, YearMonth to) {
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        // One small read of the rollup table tells which cached months are still current
+        Map<YearMonth, CategoryAmounts> totals = databaseHandler.getMonthlyBreakdown(from, to);
+        AtomicInteger computed = new AtomicInteger();
+        Map<String, CategoryStats> merged = pool.invoke(new MonthRangeTask(months, 0, months.size(), totals, computed));
+
+        Map<YearMonth, Map<String, CategoryStats>> byMonth = new TreeMap<>();
+        for (YearMonth month : months) {
+            MonthSummary summary = cache.get(month);
+            if (summary != null && !summary.stats.isEmpty()) {
+                byMonth.put(month, summary.stats);
+            }
+        }
+        return new Report(from, to, merged, byMonth, computed.get(), topSize);
+    }
+
+    public Report yearReport(int year) {
+        return report(YearMonth.of(year, 1), YearMonth.of(year, 12));
+    }
+
+    // Forgets every cached month
+    public void invalidate() {
+        cache.clear();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public void transactionAdded(long amountCents, java.util.Date date, String category) {
+        dirty.add(YearMonth.from(LocalDate.ofEpochDay(EpochDays.toEpochDay(date))));
+    }
+
+    @SuppressWarnings("serial") // Fork-join tasks are never serialized
+    private final class MonthRangeTask extends RecursiveTask<Map<String, CategoryStats>> {
+        private final List<YearMonth> months;
+        private final int start;
+        private final int end;
+        private final Map<YearMonth, CategoryAmounts> totals;
+        private final AtomicInteger computed;
+
+        MonthRangeTask(List<YearMonth> months, int start, int end,
+                       Map<YearMonth, CategoryAmounts> totals, AtomicInteger computed) {
+            this.months = months;
+            this.start = start;
+            this.end = end;
+            this.totals = totals;
+            this.computed = computed;
+        }
+
+        @Override
+        protected Map<String, CategoryStats> compute() {
+            if (end - start == 0) {
+                return new HashMap<>();
+            }
+            if (end - start == 1) {
+                return summarize(months.get(start), totals, computed).stats;
+            }
+            int middle = (start + end) >>> 1;
+            MonthRangeTask left = new MonthRangeTask(months, start, middle, totals, computed);
+            MonthRangeTask right = new MonthRangeTask(months, middle, end, totals, computed);
+            left.fork();
+            Map<String, CategoryStats> rightStats = right.compute();
+            return combine(left.join(), rightStats);
+        }
+    }
+
+    private MonthSummary summarize(YearMonth month, Map<YearMonth, CategoryAmounts> totals, AtomicInteger computed) {
+        CategoryAmounts monthTotals = totals.get(month);
+        if (monthTotals == null) {
+            monthTotals = new CategoryAmounts(databaseHandler.getCategories());
+        }
+        MonthSummary cached = cache.get(month);
+        if (cached != null && !dirty.contains(month) && cached.totals.equals(monthTotals)) {
+            return cached;
+        }
+        // Cleared before reading, so a transaction added meanwhile marks it dirty again
+        dirty.remove(month);
+        Map<String, CategoryStats> stats = new HashMap<>();
+        if (!monthTotals.isEmpty()) {
+            TransactionQuery query = new TransactionQuery().between(month.atDay(1), month.atEndOfMonth());
+            try {
+                databaseHandler.forEachTransactionWhile(query, transaction -> {
+                    stats.computeIfAbsent(transaction.getCategory(), category -> new CategoryStats(category, topSize))
+                            .add(transaction);
+                    return true;
+                });
+            } catch (RuntimeException e) {
+                // Nothing is cached from a partial read, and the month is recomputed next time
+                dirty.add(month);
+                throw e;
+            }
+        }
+        MonthSummary summary = new MonthSummary(monthTotals, stats);
+        cache.put(month, summary);
+        computed.incrementAndGet();
+        return summary;
+    }
+
+    // New map; neither input is modified, since either may be a cached month
+    private static Map<String, CategoryStats> combine(Map<String, CategoryStats> left, Map<String, CategoryStats> right) {
+        Map<String, CategoryStats> result = new HashMap<>();
+        for (CategoryStats stats : left.values()) {
+            result.put(stats.getCategory(), stats.copy());
+        }
+        for (CategoryStats stats : right.values()) {
+            CategoryStats existing = result.get(stats.getCategory());
+            if (existing == null) {
+                result.put(stats.getCategory(), stats.copy());
+            } else {
+                existing.merge(stats);
+            }
+        }
+        return result;
+    }
+}
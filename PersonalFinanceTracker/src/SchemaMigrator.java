@@ -0,0 +1,80 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Applies numbered schema versions to a database in order. The versions already
+// applied are recorded in a schema_version table, so each one runs exactly once
+// and existing database files are upgraded in place.
+public class SchemaMigrator {
+    private final String name;
+    private final List<String[]> versions = new ArrayList<>(); // versions.get(0) is version 1
+
+    public SchemaMigrator(String name) {
+        this.name = name;
+    }
+
+    // Each version is a list of statements that run together in one transaction
+    public SchemaMigrator addVersion(String... statements) {
+        versions.add(statements);
+        return this;
+    }
+
+    public int getLatestVersion() {
+        return versions.size();
+    }
+
+    // Brings the database up to the latest version and returns the version it started at
+    public int migrate(Connection conn) throws SQLException {
+        // An up-to-date database costs two reads: no DDL, no write transaction
+        try (Statement stmt = conn.createStatement()) {
+            if (hasVersionTable(stmt)) {
+                int version = currentVersion(stmt);
+                if (version >= versions.size()) {
+                    return version;
+                }
+            }
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + " version integer PRIMARY KEY,"
+                    + " applied_at text NOT NULL"
+                    + ");");
+            int startVersion = currentVersion(stmt);
+
+            conn.setAutoCommit(false);
+            for (int version = startVersion + 1; version <= versions.size(); version++) {
+                try {
+                    for (String sql : versions.get(version - 1)) {
+                        stmt.execute(sql);
+                    }
+                    stmt.execute("INSERT INTO schema_version(version, applied_at) VALUES(" + version + ", datetime('now'))");
+                    conn.commit();
+                    System.out.println("Migrated " + name + " schema to version " + version);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration of " + name + " to version " + version + " failed: " + e.getMessage(), e);
+                }
+            }
+            return startVersion;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private boolean hasVersionTable(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'schema_version'")) {
+            return rs.next();
+        }
+    }
+
+    private int currentVersion(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns what a user types into an FTS5 match expression for the transactions_fts
+// index. "Quoted text" matches as a phrase; every other word matches as a prefix,
+// so results narrow as the user types. All terms must match. Each term is quoted
+// so FTS5 operators and punctuation in the input are taken literally.
+public final class SearchQuery {
+    private SearchQuery() {
+    }
+
+    // Null if the text has nothing searchable in it
+    public static String toMatchExpression(String text) {
+        if (text == null) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                // A phrase runs to the closing quote, or to the end if it is still being typed
+                int end = text.indexOf('"', i + 1);
+                String phrase = text.substring(i + 1, end < 0 ? text.length() : end);
+                if (isSearchable(phrase)) {
+                    terms.add(quote(phrase) + (end < 0 ? "*" : ""));
+                }
+                i = end < 0 ? text.length() : end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') {
+                    end++;
+                }
+                String word = text.substring(i, end);
+                if (isSearchable(word)) {
+                    terms.add(quote(word) + "*");
+                }
+                i = end;
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    // The tokenizer drops everything but letters and digits, so a term without
+    // any would be an empty (invalid) FTS5 string
+    private static boolean isSearchable(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (Character.isLetterOrDigit(term.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(String term) {
+        return "\"" + term.replace("\"", "\"\"") + "\"";
+    }
+}
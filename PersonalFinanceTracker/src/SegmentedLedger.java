@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+
+// Append-only transaction log that any number of threads can add to without a
+// lock. An add claims the next index with one atomic increment and writes that
+// slot; nothing already written is ever moved or copied. Segments double in size
+// (4096, 8192, ... slots) and are created on first use with a CAS, so the fixed
+// directory of 19 segments never has to grow. Readers see the transactions up to
+// the first slot that is claimed but not written yet, a prefix in claim order.
+public class SegmentedLedger implements Ledger {
+    private static final int FIRST_SEGMENT_BITS = 12;
+    private static final int FIRST_SEGMENT_SIZE = 1 << FIRST_SEGMENT_BITS;
+    private static final int SEGMENTS = 31 - FIRST_SEGMENT_BITS;
+    private static final int MAX_SIZE = Integer.MAX_VALUE - FIRST_SEGMENT_SIZE + 1;
+
+    // One generation of the log; replaceAll swaps in a new one
+    private static final class Log {
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicReferenceArray<AtomicReferenceArray<Transaction>> segments = new AtomicReferenceArray<>(SEGMENTS);
+    }
+
+    private volatile Log log = new Log();
+
+    @Override
+    public void add(Transaction transaction) {
+        Log current = log;
+        write(current, claim(current, 1), transaction);
+    }
+
+    // Claims the whole batch at once, so it stays contiguous in the log
+    @Override
+    public void addAll(Collection<Transaction> transactions) {
+        Log current = log;
+        int index = claim(current, transactions.size());
+        for (Transaction transaction : transactions) {
+            write(current, index++, transaction);
+        }
+    }
+
+    // Not atomic with respect to concurrent adds, which may land in the old contents
+    @Override
+    public void replaceAll(List<Transaction> transactions) {
+        Log fresh = new Log();
+        int index = claim(fresh, transactions.size());
+        for (Transaction transaction : transactions) {
+            write(fresh, index++, transaction);
+        }
+        log = fresh;
+    }
+
+    // Claimed slots, including adds still in progress
+    @Override
+    public int size() {
+        return log.claimed.get();
+    }
+
+    // A copy of the readable prefix
+    @Override
+    public List<Transaction> getTransactions() {
+        Log current = log;
+        int count = current.claimed.get();
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = read(current, i);
+            if (transaction == null) {
+                break;
+            }
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    @Override
+    public long sumAmountCents() {
+        return sum(Transaction::getAmountCents);
+    }
+
+    @Override
+    public long sumCategoryCents(String category) {
+        return sum(t -> category.equals(t.getCategory()) ? t.getAmountCents() : 0);
+    }
+
+    @Override
+    public long sumBetweenCents(long fromEpochDay, long toEpochDay) {
+        return sum(t -> {
+            long day = EpochDays.toEpochDay(t.getDate());
+            return day >= fromEpochDay && day <= toEpochDay ? t.getAmountCents() : 0;
+        });
+    }
+
+    @Override
+    public long estimatedBytes() {
+        Log current = log;
+        long bytes = 16 + 16 + 4L * SEGMENTS;
+        for (int s = 0; s < SEGMENTS; s++) {
+            if (current.segments.get(s) != null) {
+                bytes += 16 + 16 + 4L * (FIRST_SEGMENT_SIZE << s); // AtomicReferenceArray and its array
+            }
+        }
+        for (Transaction transaction : getTransactions()) {
+            bytes += 40 + 24; // Transaction and its java.util.Date
+            bytes += Ledger.estimateStringBytes(transaction.getDescription());
+            bytes += Ledger.estimateStringBytes(transaction.getCategory());
+        }
+        return bytes;
+    }
+
+    private long sum(ToLongFunction<Transaction> amount) {
+        Log current = log;
+        int count = current.claimed.get();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = read(current, i);
+            if (transaction == null) {
+                break;
+            }
+            sum += amount.applyAsLong(transaction);
+        }
+        return sum;
+    }
+
+    private static int claim(Log log, int count) {
+        int index = log.claimed.getAndAdd(count);
+        if (index < 0 || index > MAX_SIZE - count) {
+            throw new IllegalStateException("Ledger is full");
+        }
+        return index;
+    }
+
+    // Slot i lives in segment floor(log2(i + 4096)) - 12
+    private static void write(Log log, int index, Transaction transaction) {
+        int position = index + FIRST_SEGMENT_SIZE;
+        int bit = 31 - Integer.numberOfLeadingZeros(position);
+        segment(log, bit - FIRST_SEGMENT_BITS).set(position - (1 << bit), transaction);
+    }
+
+    private static Transaction read(Log log, int index) {
+        int position = index + FIRST_SEGMENT_SIZE;
+        int bit = 31 - Integer.numberOfLeadingZeros(position);
+        AtomicReferenceArray<Transaction> segment = log.segments.get(bit - FIRST_SEGMENT_BITS);
+        return segment == null ? null : segment.get(position - (1 << bit));
+    }
+
+    private static AtomicReferenceArray<Transaction> segment(Log log, int s) {
+        AtomicReferenceArray<Transaction> segment = log.segments.get(s);
+        if (segment == null) {
+            log.segments.compareAndSet(s, null, new AtomicReferenceArray<>(FIRST_SEGMENT_SIZE << s));
+            segment = log.segments.get(s);
+        }
+        return segment;
+    }
+}
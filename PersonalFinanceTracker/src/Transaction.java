@@ -1,25 +1,64 @@
 import java.util.Date;
 
 public class Transaction {
-    private double amount;
+    // Account of transactions that do not name one, and of everything recorded before accounts existed
+    public static final int DEFAULT_ACCOUNT_ID = 1;
+
+    private long id; // Database row id, 0 until the transaction has been stored
+    private long amountCents; // See Money
     private Date date; // This assumes you are working with a java.util.Date object
     private String description;
     private String category;
+    private int categoryId = -1; // Id in the CategoryDictionary that produced this transaction, -1 if none
+    private int accountId = DEFAULT_ACCOUNT_ID; // Id in the accounts table
 
     public Transaction(double amount, Date date, String description, String category) {
-        this.amount = amount;
+        this(0, amount, date, description, category);
+    }
+
+    public Transaction(long id, double amount, Date date, String description, String category) {
+        this(id, amount, date, description, category, -1);
+    }
+
+    public Transaction(long id, double amount, Date date, String description, String category, int categoryId) {
+        this(id, Money.toCents(amount), date, description, category, categoryId);
+    }
+
+    // A factory rather than a public constructor: a long overload would quietly
+    // capture callers that pass whole-dollar int amounts to the constructors above
+    public static Transaction ofCents(long id, long amountCents, Date date, String description, String category, int categoryId) {
+        return new Transaction(id, amountCents, date, description, category, categoryId);
+    }
+
+    private Transaction(long id, long amountCents, Date date, String description, String category, int categoryId) {
+        this.id = id;
+        this.amountCents = amountCents;
         this.date = date;
         this.description = description;
         this.category = category;
+        this.categoryId = categoryId;
     }
 
   
+    public long getId() {
+        return id;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    // For display; sums and comparisons should use getAmountCents
     public double getAmount() {
-        return amount;
+        return Money.toAmount(amountCents);
     }
 
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amountCents = Money.toCents(amount);
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
     }
 
     public Date getDate() {
@@ -44,6 +83,19 @@ public class Transaction {
 
     public void setCategory(String category) {
         this.category = category;
+        this.categoryId = -1;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(int accountId) {
+        this.accountId = accountId;
     }
 
     
@@ -51,10 +103,11 @@ public class Transaction {
     @Override
     public String toString() {
         return "Transaction{" +
-                "amount=" + amount +
+                "amount=" + Money.format(amountCents) +
                 ", date=" + date +
                 ", description='" + description + '\'' +
                 ", category='" + category + '\'' +
+                ", account=" + accountId +
                 '}';
     }
 }
@@ -0,0 +1,528 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// Write-behind journal for new transactions. append() returns once the entry is
+// fsync'd to an append-only file; a background thread then applies queued entries
+// to transactions.db in batches, one SQLite commit per batch. The last applied
+// sequence number is committed with each batch (DatabaseHandler.applyJournalBatch),
+// so entries left in the file after a crash are replayed exactly once on the next
+// start. The file is truncated once everything in it has been applied.
+//
+// A batch that keeps failing is retried MAX_ATTEMPTS times, then applied one
+// entry at a time. An entry the database still rejects while it accepts the
+// watermark is bad data: it is appended to a ".dead" file next to the journal,
+// in the same record layout, and skipped so it cannot hold up later entries.
+// Flushes, fsyncs and appends are timed under the Journal group in Metrics.
+//
+// Record layout: int payload length, int CRC32 of the payload, then the payload:
+// byte format version (RECORD_VERSION), long seq, long amount in cents, long epoch
+// day, description and category as length-prefixed UTF-8 (length -1 for null),
+// then int account id. A record with any other version byte is treated as corrupt,
+// like one that fails its checksum, except that a version newer than this build's
+// stops startup rather than being cut off.
+public class TransactionJournal implements AutoCloseable {
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long FLUSH_INTERVAL_MS = 50;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int HEADER_BYTES = 8;
+    private static final byte RECORD_VERSION = 2;
+    // Applied entries are cut from the file once it grows past this
+    private static final long TRUNCATE_THRESHOLD_BYTES = 1 << 20;
+
+    // Applying a batch (count = batches, errors = failed flushes)
+    private static final Metrics.Timer FLUSH_TIMER = Metrics.timer("Journal", "flush");
+    private static final Metrics.Timer FSYNC_TIMER = Metrics.timer("Journal", "fsync");
+    // Write and fsync of one entry, including any wait for a group fsync
+    private static final Metrics.Timer APPEND_TIMER = Metrics.timer("Journal", "append");
+
+    private final Path file;
+    private final Path deadLetterFile;
+    private final DatabaseHandler databaseHandler;
+    private final FileChannel channel;
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+    private final List<Runnable> flushListeners = new CopyOnWriteArrayList<>();
+    private final Thread flusher;
+
+    // Guards writePosition and nextSeq; taken before forceLock, never after
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+    private volatile long writePosition;
+    private long forcedPosition;
+    private long nextSeq;
+    private volatile boolean running = true;
+    // Failed attempts in a row; only touched by whichever thread is flushing
+    private int failedAttempts;
+
+    // Counters
+    private final AtomicLong appendedSeq = new AtomicLong();
+    private final AtomicLong appliedSeq = new AtomicLong();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong appliedEntries = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+
+    private static final class Entry {
+        final long seq;
+        final Transaction transaction;
+
+        Entry(long seq, Transaction transaction) {
+            this.seq = seq;
+            this.transaction = transaction;
+        }
+    }
+
+    // Opens (or creates) the journal and applies any entries a previous run left
+    // behind before returning, then starts the background flusher
+    public TransactionJournal(Path file, DatabaseHandler databaseHandler) throws IOException {
+        this.file = file;
+        this.deadLetterFile = file.resolveSibling(file.getFileName() + ".dead");
+        this.databaseHandler = databaseHandler;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long applied = databaseHandler.getJournalAppliedSeq();
+        if (applied < 0) {
+            channel.close();
+            throw new IOException("Cannot read journal watermark from the database");
+        }
+        appliedSeq.set(applied);
+        List<Entry> tail = replay(applied);
+        nextSeq = Math.max(applied, tail.isEmpty() ? 0 : tail.get(tail.size() - 1).seq) + 1;
+        appendedSeq.set(nextSeq - 1);
+        if (!tail.isEmpty()) {
+            System.out.println("Replaying " + tail.size() + " journaled transactions from " + file);
+            pending.addAll(tail);
+            try {
+                while (!pending.isEmpty() && flushOnce(0)) {
+                    // A failed batch stays queued for the flusher to retry
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        truncateIfApplied(1);
+
+        flusher = new Thread(this::runFlusher, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Durably records a transaction and returns its sequence number. The row
+    // reaches transactions.db on the next flush.
+    public long append(double amount, Date date, String description, String category) throws IOException {
+        return appendCents(Money.toCents(amount), date, description, category);
+    }
+
+    public long appendCents(long amountCents, Date date, String description, String category) throws IOException {
+        return appendCents(Transaction.DEFAULT_ACCOUNT_ID, amountCents, date, description, category);
+    }
+
+    public long appendCents(int accountId, long amountCents, Date date, String description, String category) throws IOException {
+        if (date == null || category == null) {
+            throw new IllegalArgumentException("Date and category are required");
+        }
+        if (!running) {
+            throw new IOException("Journal is closed");
+        }
+        long start = System.nanoTime();
+        Transaction transaction = Transaction.ofCents(0, amountCents, date, description, category, -1);
+        transaction.setAccountId(accountId);
+        long seq;
+        long end;
+        synchronized (appendLock) {
+            seq = nextSeq;
+            ByteBuffer record = encode(seq, transaction);
+            long position = writePosition;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            nextSeq++;
+            writePosition = position;
+            end = position;
+            appendedSeq.set(seq);
+            pending.add(new Entry(seq, transaction));
+        }
+        force(end);
+        appends.incrementAndGet();
+        APPEND_TIMER.recordSince(start);
+        return seq;
+    }
+
+    // Runs after each batch is committed, on the flusher thread
+    public void addFlushListener(Runnable listener) {
+        flushListeners.add(listener);
+    }
+
+    // Group fsync: one force covers every append written before it started
+    private void force(long upTo) throws IOException {
+        synchronized (forceLock) {
+            if (forcedPosition >= upTo) {
+                return;
+            }
+            long target = writePosition;
+            long start = System.nanoTime();
+            channel.force(false);
+            FSYNC_TIMER.recordSince(start);
+            fsyncs.incrementAndGet();
+            forcedPosition = target;
+        }
+    }
+
+    private void runFlusher() {
+        while (running || !pending.isEmpty()) {
+            try {
+                if (!flushOnce(FLUSH_INTERVAL_MS)) {
+                    if (!running) {
+                        return; // Still in the file; replayed on the next start
+                    }
+                    Thread.sleep(RETRY_DELAY_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Applies up to MAX_BATCH_SIZE queued entries in one commit. Entries stay
+    // queued if the commit fails, until it has failed MAX_ATTEMPTS times in a row
+    // and bad entries are set aside. Returns false only on failure.
+    private boolean flushOnce(long waitMs) throws InterruptedException {
+        Entry first = waitMs > 0 ? pending.poll(waitMs, TimeUnit.MILLISECONDS) : pending.peek();
+        if (first == null) {
+            return true;
+        }
+        List<Entry> batch = new ArrayList<>();
+        if (waitMs > 0) {
+            batch.add(first);
+            pending.drainTo(batch, MAX_BATCH_SIZE - 1);
+        } else {
+            pending.drainTo(batch, MAX_BATCH_SIZE);
+        }
+
+        List<Transaction> rows = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            rows.add(entry.transaction);
+        }
+        long lastSeq = batch.get(batch.size() - 1).seq;
+        long start = System.nanoTime();
+        if (apply(rows, lastSeq)) {
+            failedAttempts = 0;
+            recordBatch(lastSeq, batch.size(), start);
+        } else if (++failedAttempts < MAX_ATTEMPTS) {
+            requeue(batch);
+            return false;
+        } else {
+            failedAttempts = 0;
+            if (!applyEachOrSkip(batch)) {
+                return false;
+            }
+        }
+
+        truncateIfApplied(TRUNCATE_THRESHOLD_BYTES);
+        for (Runnable listener : flushListeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    // Last resort for a batch that keeps failing: applies its entries one at a time
+    // and dead-letters any the database rejects while still taking the watermark.
+    // If the watermark fails too the database is at fault, not the data, so the
+    // rest of the batch is requeued and false returned.
+    private boolean applyEachOrSkip(List<Entry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            long start = System.nanoTime();
+            if (apply(Collections.singletonList(entry.transaction), entry.seq)) {
+                recordBatch(entry.seq, 1, start);
+                continue;
+            }
+            // A commit of just the current watermark changes nothing; if that fails too,
+            // the database is at fault and the entry is kept
+            if (!apply(Collections.emptyList(), entry.seq - 1)) {
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            }
+            try {
+                Files.write(deadLetterFile, encode(entry.seq, entry.transaction).array(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            } catch (IOException e) {
+                System.out.println("Could not write journal dead letter file " + deadLetterFile + ": " + e.getMessage());
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            }
+            if (!apply(Collections.emptyList(), entry.seq)) {
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            }
+            appliedSeq.set(entry.seq);
+            deadLetters.incrementAndGet();
+            System.out.println("Skipped journal entry " + entry.seq + " (" + entry.transaction
+                    + "), which the database keeps rejecting; saved to " + deadLetterFile);
+        }
+        return true;
+    }
+
+    // One commit of rows plus the watermark; false if it failed for any reason
+    private boolean apply(List<Transaction> rows, long lastSeq) {
+        boolean applied;
+        try {
+            applied = databaseHandler.applyJournalBatch(rows, lastSeq);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            applied = false;
+        }
+        if (!applied) {
+            failedFlushes.incrementAndGet();
+            FLUSH_TIMER.recordError();
+        }
+        return applied;
+    }
+
+    private void recordBatch(long lastSeq, int size, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        appliedSeq.set(lastSeq);
+        batches.incrementAndGet();
+        appliedEntries.addAndGet(size);
+        lastBatchSize.set(size);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        totalFlushNanos.addAndGet(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+        FLUSH_TIMER.record(nanos);
+    }
+
+    // Puts a failed batch back at the head of the queue, ahead of newer entries
+    private void requeue(List<Entry> batch) {
+        synchronized (appendLock) {
+            List<Entry> newer = new ArrayList<>();
+            pending.drainTo(newer);
+            pending.addAll(batch);
+            pending.addAll(newer);
+        }
+    }
+
+    // Everything in the file is in the database, so start the file over
+    private void truncateIfApplied(long minBytes) {
+        synchronized (appendLock) {
+            if (appliedSeq.get() != nextSeq - 1 || writePosition < minBytes) {
+                return;
+            }
+            synchronized (forceLock) {
+                try {
+                    channel.truncate(0);
+                    channel.force(false);
+                    writePosition = 0;
+                    forcedPosition = 0;
+                } catch (IOException e) {
+                    System.out.println("Could not truncate journal " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Reads entries after the watermark. A torn or corrupt record ends the valid
+    // part of the file; anything after it is cut off.
+    private List<Entry> replay(long applied) throws IOException {
+        List<Entry> tail = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining() && channel.read(payload, position + HEADER_BYTES + payload.position()) > 0) {
+                // Keep reading until the payload is full
+            }
+            payload.flip();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            byte version = payload.get(payload.position());
+            if (version > RECORD_VERSION) {
+                // Written by a newer build; cutting it off would lose it
+                throw new IOException("Unsupported journal record version " + version + " in " + file);
+            }
+            if (version != RECORD_VERSION) {
+                break;
+            }
+            Entry entry;
+            try {
+                entry = decode(payload);
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+            if (entry.seq > applied) {
+                tail.add(entry);
+            }
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            System.out.println("Discarding " + (size - position) + " bytes of incomplete journal data in " + file);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        writePosition = position;
+        forcedPosition = position;
+        return tail;
+    }
+
+    private static ByteBuffer encode(long seq, Transaction transaction) {
+        byte[] description = bytes(transaction.getDescription());
+        byte[] category = bytes(transaction.getCategory());
+        int length = 1 + 8 + 8 + 8 + 4 + (description == null ? 0 : description.length) + 4 + category.length + 4;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length).putInt(0);
+        record.put(RECORD_VERSION)
+                .putLong(seq)
+                .putLong(transaction.getAmountCents())
+                .putLong(EpochDays.toEpochDay(transaction.getDate()));
+        putString(record, description);
+        putString(record, category);
+        record.putInt(transaction.getAccountId());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    // Expects a RECORD_VERSION payload
+    private static Entry decode(ByteBuffer payload) {
+        payload.get(); // Version
+        long seq = payload.getLong();
+        long amountCents = payload.getLong();
+        long epochDay = payload.getLong();
+        String description = getString(payload);
+        String category = getString(payload);
+        Transaction transaction = Transaction.ofCents(0, amountCents, EpochDays.toDate(epochDay), description, category, -1);
+        transaction.setAccountId(payload.getInt());
+        return new Entry(seq, transaction);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    // Applies whatever is still queued, then closes the file
+    @Override
+    public void close() {
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        truncateIfApplied(1);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Entries appended but not yet in the database
+    public long getDepth() {
+        return appendedSeq.get() - appliedSeq.get();
+    }
+
+    public long getAppends() {
+        return appends.get();
+    }
+
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getAppliedEntries() {
+        return appliedEntries.get();
+    }
+
+    public long getLastBatchSize() {
+        return lastBatchSize.get();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public long getTotalFlushNanos() {
+        return totalFlushNanos.get();
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos.get();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.get();
+    }
+
+    // Entries skipped and saved to the dead letter file
+    public long getDeadLetters() {
+        return deadLetters.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = getBatches();
+        double avgFlushMillis = count == 0 ? 0 : getTotalFlushNanos() / 1_000_000.0 / count;
+        double avgBatch = count == 0 ? 0 : (double) getAppliedEntries() / count;
+        return String.format("TransactionJournal{file='%s', depth=%d, appends=%d, fsyncs=%d, batches=%d, avgBatch=%.1f, maxBatch=%d, avgFlush=%.2fms, maxFlush=%.2fms, failedFlushes=%d, deadLetters=%d}",
+                file, getDepth(), getAppends(), getFsyncs(), count, avgBatch, getMaxBatchSize(),
+                avgFlushMillis, getMaxFlushNanos() / 1_000_000.0, getFailedFlushes(), getDeadLetters());
+    }
+}
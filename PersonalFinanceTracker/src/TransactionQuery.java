@@ -0,0 +1,106 @@
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Filter over transactions by account, date range, category set and amount range,
+// run by DatabaseHandler as parameterized SQL against the account, date, category
+// and amount indexes. Bounds are inclusive and any of them may be left open. An empty query
+// matches every transaction. Results come in date order. Amounts are in cents (see Money).
+public class TransactionQuery {
+    private LocalDate from;
+    private LocalDate to;
+    private final Set<String> categories = new LinkedHashSet<>();
+    private Long minAmountCents;
+    private Long maxAmountCents;
+    private int limit = -1;
+    private int accountId = -1;
+
+    public TransactionQuery between(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public TransactionQuery from(LocalDate from) {
+        this.from = from;
+        return this;
+    }
+
+    public TransactionQuery to(LocalDate to) {
+        this.to = to;
+        return this;
+    }
+
+    // Matches any of the given categories; calling it again adds more
+    public TransactionQuery inCategories(String... categories) {
+        Collections.addAll(this.categories, categories);
+        return this;
+    }
+
+    public TransactionQuery inCategories(Collection<String> categories) {
+        this.categories.addAll(categories);
+        return this;
+    }
+
+    public TransactionQuery amountBetween(Double minAmount, Double maxAmount) {
+        return amountBetweenCents(minAmount == null ? null : Money.toCents(minAmount),
+                maxAmount == null ? null : Money.toCents(maxAmount));
+    }
+
+    public TransactionQuery amountBetweenCents(Long minAmountCents, Long maxAmountCents) {
+        this.minAmountCents = minAmountCents;
+        this.maxAmountCents = maxAmountCents;
+        return this;
+    }
+
+    // Only transactions of this account
+    public TransactionQuery inAccount(int accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public TransactionQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public Set<String> getCategories() {
+        return Collections.unmodifiableSet(categories);
+    }
+
+    public Long getMinAmountCents() {
+        return minAmountCents;
+    }
+
+    public Long getMaxAmountCents() {
+        return maxAmountCents;
+    }
+
+    // -1 for no limit
+    public int getLimit() {
+        return limit;
+    }
+
+    // -1 for every account
+    public int getAccountId() {
+        return accountId;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionQuery{from=" + from + ", to=" + to + ", categories=" + categories
+                + ", amount=" + (minAmountCents == null ? null : Money.format(minAmountCents))
+                + ".." + (maxAmountCents == null ? null : Money.format(maxAmountCents))
+                + (accountId >= 0 ? ", account=" + accountId : "") + ", limit=" + limit + "}";
+    }
+}
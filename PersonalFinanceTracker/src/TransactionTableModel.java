@@ -0,0 +1,185 @@
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.swing.table.AbstractTableModel;
+
+// Lazy table model for the transactions table. Only the row count is known up
+// front; rows are fetched a page at a time when the JTable asks for them and kept
+// in a bounded LRU cache. Sorting and filtering are done by DatabaseHandler in SQL;
+// the filter is a full-text search (see SearchQuery). In the default date order with
+// no filter, pages are keyset seeks from the nearest cached page below them.
+@SuppressWarnings("serial") // Never serialized
+public class TransactionTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 25;
+
+    private static final String[] COLUMN_NAMES = {"Date", "Amount", "Description", "Category"};
+    private static final String[] SORT_COLUMNS = {"date", "amount", "description", "category"};
+    private static final Class<?>[] COLUMN_CLASSES = {Date.class, Double.class, String.class, String.class};
+
+    // Request to EDT delivery, including time queued behind other reads
+    private static final Metrics.Timer REFRESH_TIMER = Metrics.timer("GUI", "tableRefresh");
+    private static final Metrics.Timer PAGE_TIMER = Metrics.timer("GUI", "tablePage");
+
+    private final DataService dataService;
+    private final DatabaseHandler databaseHandler;
+
+    private final Map<Integer, List<Transaction>> pages = new LinkedHashMap<Integer, List<Transaction>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    private int rowCount;
+    private int sortColumn = 0;
+    private boolean ascending = true;
+    private String filter = "";
+    // Bumped whenever the query changes so pages loaded for an older query are ignored
+    private int generation;
+
+    public TransactionTableModel(DataService dataService) {
+        this.dataService = dataService;
+        this.databaseHandler = dataService.getDatabaseHandler();
+    }
+
+    // Drops cached pages and reloads the row count, e.g. after a transaction is added
+    public void refresh() {
+        int requestGeneration = ++generation;
+        pages.clear();
+        String currentFilter = filter;
+        long start = System.nanoTime();
+        DataService.deliver(dataService.query("countTransactions:" + currentFilter, () -> databaseHandler.countTransactions(currentFilter)),
+                count -> {
+                    if (requestGeneration == generation) {
+                        rowCount = count;
+                        fireTableDataChanged();
+                    }
+                    REFRESH_TIMER.recordSince(start);
+                },
+                error -> {
+                    REFRESH_TIMER.recordError();
+                    System.out.println("Error counting transactions: " + error.getMessage());
+                });
+    }
+
+    // Clicking the same column again flips the direction
+    public void sortBy(int column) {
+        if (column == sortColumn) {
+            ascending = !ascending;
+        } else {
+            sortColumn = column;
+            ascending = true;
+        }
+        refresh();
+    }
+
+    public void setFilter(String filter) {
+        String trimmed = filter == null ? "" : filter.trim();
+        if (trimmed.equals(this.filter)) {
+            return;
+        }
+        this.filter = trimmed;
+        refresh();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMN_NAMES[column];
+        if (column == sortColumn) {
+            name += ascending ? " \u25B2" : " \u25BC";
+        }
+        return name;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int pageIndex = row / PAGE_SIZE;
+        List<Transaction> page = pages.get(pageIndex);
+        if (page == null) {
+            loadPage(pageIndex);
+            return null; // Rendered blank until the page arrives
+        }
+        int offset = row % PAGE_SIZE;
+        if (offset >= page.size()) {
+            return null;
+        }
+        Transaction transaction = page.get(offset);
+        switch (column) {
+            case 0:
+                return transaction.getDate();
+            case 1:
+                return transaction.getAmount();
+            case 2:
+                return transaction.getDescription();
+            default:
+                return transaction.getCategory();
+        }
+    }
+
+    private void loadPage(int pageIndex) {
+        int requestGeneration = generation;
+        String sort = SORT_COLUMNS[sortColumn];
+        boolean sortAscending = ascending;
+        String currentFilter = filter;
+        // Keyed by the full query, so repeated paints of the same missing page share one fetch
+        String key = "transactionsPage:" + requestGeneration + ":" + pageIndex;
+        long start = System.nanoTime();
+        Supplier<List<Transaction>> fetch;
+        if (sortColumn == 0 && sortAscending && currentFilter.isEmpty()) {
+            int boundary = nearestBoundary(pageIndex);
+            Transaction after = boundary < 0 ? null : pages.get(boundary).get(PAGE_SIZE - 1);
+            int skip = (pageIndex - boundary - 1) * PAGE_SIZE;
+            fetch = () -> databaseHandler.getTransactionsPage(after, skip, PAGE_SIZE);
+        } else {
+            fetch = () -> databaseHandler.getTransactionsWindow(sort, sortAscending, currentFilter, pageIndex * PAGE_SIZE, PAGE_SIZE);
+        }
+        DataService.deliver(dataService.query(key, fetch),
+                page -> {
+                    PAGE_TIMER.recordSince(start);
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    pages.put(pageIndex, page);
+                    int firstRow = pageIndex * PAGE_SIZE;
+                    int lastRow = Math.min(firstRow + PAGE_SIZE, rowCount) - 1;
+                    if (lastRow >= firstRow) {
+                        fireTableRowsUpdated(firstRow, lastRow);
+                    }
+                },
+                error -> {
+                    PAGE_TIMER.recordError();
+                    System.out.println("Error loading transactions: " + error.getMessage());
+                });
+    }
+
+    // The closest full cached page before pageIndex, or -1 to seek from the start
+    private int nearestBoundary(int pageIndex) {
+        int boundary = -1;
+        for (Map.Entry<Integer, List<Transaction>> entry : pages.entrySet()) {
+            int cached = entry.getKey();
+            if (cached < pageIndex && cached > boundary && entry.getValue().size() == PAGE_SIZE) {
+                boundary = cached;
+            }
+        }
+        return boundary;
+    }
+}